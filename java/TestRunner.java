@@ -1,39 +1,170 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.net.ConnectException;
+import java.net.StandardProtocolFamily;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.net.UnixDomainSocketAddress;
 import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.Pipe;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.InvalidPathException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.Permission;
+import java.time.Instant;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
-import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.function.BiConsumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
 import static java.util.function.Predicate.not;
 
 public class TestRunner
 {
     private static final int DUMP_AROUND_SIZE = 30;
+    private static final String NULL_FILE = File.separatorChar == '\\' ? "NUL" : "/dev/null";
 
     // runtime
-    private static final AtomicReference<Process> runningProcess = new AtomicReference<>();
-    private static int mainTimeout = 10;
+    private static final Map<Path, Semaphore> runDirLocks = new ConcurrentHashMap<>();
+    private static final ExecutorService ioExecutor = newIoExecutor();
+    private static final ScheduledExecutorService monitorExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        final Thread thread = new Thread(r, "TestRunner-monitor");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static long mainTimeoutMillis = 10000;
+    private static long mainCpuLimitMillis = -1;
+    // time given to terminated process tree before it is killed forcibly
+    private static long killGraceMillis = 1000;
+    private static long mainMemoryLimit = -1;
+    private static long mainOutputLimit = -1;
+    private static boolean generatorMemoryLimit = false;
+    private static int parallelism = 1;
+    private static int[] pipelineDepths = null;
+    // pipeline mode only, keeps main and benchmark runs serialized
+    private static Semaphore mainLock = null;
+    private static boolean exclusiveChildren = true;
+    private static long sampleInterval = 10;
+    private static int benchmarkRuns = 0;
+    private static int benchmarkWarmup = 1;
+    private static double benchmarkThreshold = 10;
+    private static boolean benchmarkUpdate = false;
+    private static boolean incremental = false;
+    private static Manifest manifest = null;
+    private static int shardIndex = 1;
+    private static int shardCount = 1;
+    private static Path resultFile = null;
+    private static boolean historyOrder = false;
+    private static int failFast = 0;
     private static boolean debug = false;
+    private static boolean killOnMismatch = false;
+    private static boolean lineDiff = false;
+    private static int diffHunks = 3;
+    private static GeneratorCache generatorCache = null;
+    private static boolean streamInput = false;
+    private static long streamMemory = 64 << 20;
+    private static Path spillDirectory = null;
+    private static boolean persistInput = false;
+    private static boolean inProcess = false;
+    private static boolean watch = false;
 
     public static void main(final String[] args) throws Exception
     {
         final Path testFolder;
         final String[] mainBase;
+        final List<Reporter> reporters = new ArrayList<>();
+        final Workspace workspace;
+        final Daemon daemon;
+
+        final String connectProperty = System.getProperty("tr.connect");
+        if (connectProperty != null)
+        {
+            Daemon.connect(Path.of(connectProperty));
+            return;
+        }
+
+        final String mergeProperty = System.getProperty("tr.merge");
+        if (mergeProperty != null)
+        {
+            final String historyProperty = System.getProperty("tr.history");
+            mergeResults(mergeProperty.split(","), historyProperty == null ? null : Path.of(historyProperty));
+            return;
+        }
 
         {
             boolean errored = false;
@@ -41,7 +172,50 @@ public class TestRunner
             final String mainProperty = System.getProperty("tr.main");
             final String fileExtensionProperty = System.getProperty("tr.file_exts");
             final String timeoutProperty = System.getProperty("tr.main_timeout");
+            final String cpuLimitProperty = System.getProperty("tr.main_cputime");
+            final String killGraceProperty = System.getProperty("tr.kill_grace");
+            final String memoryLimitProperty = System.getProperty("tr.main_memlimit");
+            final String outputLimitProperty = System.getProperty("tr.main_outlimit");
+            final String generatorMemoryLimitProperty = System.getProperty("tr.gen_memlimit");
             final String debugProperty = System.getProperty("tr.debug");
+            final String parallelProperty = System.getProperty("tr.parallel");
+            final String pipelineProperty = System.getProperty("tr.pipeline");
+            final String pipelineDepthProperty = System.getProperty("tr.pipeline_depth");
+            final String killOnMismatchProperty = System.getProperty("tr.kill_on_mismatch");
+            final String diffProperty = System.getProperty("tr.diff");
+            final String diffHunksProperty = System.getProperty("tr.diff_hunks");
+            final String genCacheProperty = System.getProperty("tr.gen_cache");
+            final String genCacheClearProperty = System.getProperty("tr.gen_cache_clear");
+            final String genStreamProperty = System.getProperty("tr.gen_stream");
+            final String genStreamMemoryProperty = System.getProperty("tr.gen_stream_memory");
+            final String genStreamSpillProperty = System.getProperty("tr.gen_stream_spill");
+            final String genStreamPersistProperty = System.getProperty("tr.gen_stream_persist");
+            final String stageProperty = System.getProperty("tr.stage");
+            final String stageHardlinkProperty = System.getProperty("tr.stage_hardlink");
+            final String inProcessProperty = System.getProperty("tr.main_inprocess");
+            final String sampleIntervalProperty = System.getProperty("tr.sample_interval");
+            final String benchmarkProperty = System.getProperty("tr.bench");
+            final String benchmarkWarmupProperty = System.getProperty("tr.bench_warmup");
+            final String benchmarkThresholdProperty = System.getProperty("tr.bench_threshold");
+            final String benchmarkUpdateProperty = System.getProperty("tr.bench_update");
+            final String incrementalProperty = System.getProperty("tr.incremental");
+            final String manifestProperty = System.getProperty("tr.manifest");
+            final String shardProperty = System.getProperty("tr.shard");
+            final String orderProperty = System.getProperty("tr.order");
+            final String failFastProperty = System.getProperty("tr.fail_fast");
+            final String resultFileProperty = System.getProperty("tr.result_file");
+            final String historyProperty = System.getProperty("tr.history");
+            final String consoleProperty = System.getProperty("tr.console");
+            final String reportJsonlProperty = System.getProperty("tr.report_jsonl");
+            final String reportJunitProperty = System.getProperty("tr.report_junit");
+            final String watchProperty = System.getProperty("tr.watch");
+            final String watchDebounceProperty = System.getProperty("tr.watch_debounce");
+            final String daemonProperty = System.getProperty("tr.daemon");
+            final String daemonRequestsProperty = System.getProperty("tr.daemon_requests");
+            final String stressProperty = System.getProperty("tr.stress");
+            final String stressTimeProperty = System.getProperty("tr.stress_time");
+            final String stressSeedProperty = System.getProperty("tr.stress_seed");
+            final String stressShrinkProperty = System.getProperty("tr.stress_shrink");
 
             if (debugProperty != null)
             {
@@ -55,566 +229,7359 @@ public class TestRunner
                 }
             }
 
-            if (timeoutProperty != null)
+            if (killOnMismatchProperty != null)
+            {
+                killOnMismatch = Boolean.parseBoolean(killOnMismatchProperty);
+            }
+
+            if (diffProperty != null)
+            {
+                switch (diffProperty)
+                {
+                    case "bytes" -> lineDiff = false;
+                    case "lines" -> lineDiff = true;
+                    default ->
+                    {
+                        System.err.println("unknown diff, expected bytes or lines: " + diffProperty);
+                        errored = true;
+                    }
+                }
+            }
+
+            if (diffHunksProperty != null)
             {
                 try
                 {
-                    mainTimeout = Integer.parseInt(timeoutProperty);
+                    diffHunks = Integer.parseInt(diffHunksProperty);
+                    if (diffHunks < 1)
+                    {
+                        throw new NumberFormatException();
+                    }
                 }
                 catch (NumberFormatException e)
                 {
-                    System.err.println("unparsable timeout: " + e.getMessage());
+                    System.err.println("unparsable diff hunks: " + diffHunksProperty);
                     errored = true;
                 }
             }
 
-            if (mainProperty == null)
-            {
-                System.err.println("missing -Dtr.main in format 'path_to_executable arguments'");
-                errored = true;
-                mainBase = null;
-            }
-            else
+            if (timeoutProperty != null)
             {
-                mainBase = mainProperty.split(" "); // arguments splitting? not so easy
+                try
+                {
+                    mainTimeoutMillis = ProcessSupervisor.parseDuration(timeoutProperty);
+                }
+                catch (NumberFormatException e)
+                {
+                    System.err.println("unparsable timeout: " + timeoutProperty);
+                    errored = true;
+                }
             }
 
-            if (fileExtensionProperty != null && FileExtension.changeExtensions(fileExtensionProperty.split(",")))
+            if (cpuLimitProperty != null)
             {
-                errored = true;
+                try
+                {
+                    mainCpuLimitMillis = ProcessSupervisor.parseDuration(cpuLimitProperty);
+                }
+                catch (NumberFormatException e)
+                {
+                    System.err.println("unparsable cpu time limit: " + cpuLimitProperty);
+                    errored = true;
+                }
             }
 
-            if (folderProperty == null)
+            if (killGraceProperty != null)
             {
-                System.err.println("missing -Dtr.folder pointing to folder with .in/out/err/... files");
-                errored = true;
-                testFolder = null; // irrelevant
+                try
+                {
+                    killGraceMillis = Math.max(0, ProcessSupervisor.parseDuration(killGraceProperty));
+                }
+                catch (NumberFormatException e)
+                {
+                    System.err.println("unparsable kill grace: " + killGraceProperty);
+                    errored = true;
+                }
             }
-            else
+
+            if (memoryLimitProperty != null)
             {
-                testFolder = Path.of(folderProperty).toAbsolutePath().normalize();
-                if (!Files.isDirectory(testFolder))
+                try
                 {
-                    System.err.println("non-directory path in -Dtr.folder: " + testFolder);
+                    mainMemoryLimit = MemoryLimit.parseSize(memoryLimitProperty);
+                }
+                catch (NumberFormatException e)
+                {
+                    System.err.println("unparsable memory limit: " + memoryLimitProperty);
                     errored = true;
                 }
             }
+            generatorMemoryLimit = Boolean.parseBoolean(generatorMemoryLimitProperty);
 
-            if (errored)
+            if (outputLimitProperty != null)
             {
-                throw new IllegalArgumentException("Failed to setup: see above for further informantion");
+                try
+                {
+                    mainOutputLimit = MemoryLimit.parseSize(outputLimitProperty);
+                }
+                catch (NumberFormatException e)
+                {
+                    System.err.println("unparsable output limit: " + outputLimitProperty);
+                    errored = true;
+                }
             }
 
-            if (debug)
+            if (parallelProperty != null)
             {
-                System.err.println("DEBUG: testFolder: " + testFolder);
-                System.err.println("DEBUG: runDir: " + Paths.get(".").toAbsolutePath().normalize());
-                System.err.println();
+                try
+                {
+                    parallelism = Integer.parseInt(parallelProperty);
+                    if (parallelism < 1)
+                    {
+                        System.err.println("non-positive parallel worker count: " + parallelism);
+                        errored = true;
+                    }
+                }
+                catch (NumberFormatException e)
+                {
+                    System.err.println("unparsable parallel: " + e.getMessage());
+                    errored = true;
+                }
             }
-        }
 
-        final Map<String, TestInfo> testInfos = new HashMap<>();
-
-        try (var it = Files.newDirectoryStream(testFolder))
-        {
-            for (final Path testPath : it)
+            if (Boolean.parseBoolean(pipelineProperty))
             {
-                final String fileNameWithExt = testPath.getFileName().toString();
-                final int lastPeriod = fileNameWithExt.lastIndexOf('.');
-                if (lastPeriod == -1)
+                final String[] depths = (pipelineDepthProperty == null ? "2" : pipelineDepthProperty).split(",");
+                try
                 {
-                    continue;
+                    pipelineDepths = new int[3];
+                    for (int i = 0; i < pipelineDepths.length; i++)
+                    {
+                        pipelineDepths[i] = Integer.parseInt(depths[depths.length == 1 ? 0 : i].trim());
+                        if (pipelineDepths[i] < 1)
+                        {
+                            System.err.println("non-positive pipeline depth: " + pipelineDepths[i]);
+                            errored = true;
+                        }
+                    }
+                    if (depths.length != 1 && depths.length != pipelineDepths.length)
+                    {
+                        System.err.println("expected one or three pipeline depths but got: " + pipelineDepthProperty);
+                        errored = true;
+                    }
+                }
+                catch (NumberFormatException | ArrayIndexOutOfBoundsException e)
+                {
+                    System.err.println("unparsable pipeline depth: " + pipelineDepthProperty);
+                    errored = true;
                 }
 
-                final var fileExtension = FileExtension.get(fileNameWithExt.substring(lastPeriod + 1));
-                if (fileExtension != null)
+                if (parallelism > 1)
                 {
-                    final String fileName = fileNameWithExt.substring(0, lastPeriod);
-                    fileExtension.extensionProcessor.accept(testInfos.computeIfAbsent(fileName, TestInfo::ofName),
-                        testPath.toAbsolutePath().normalize());
+                    System.err.println("-Dtr.pipeline can not be combined with -Dtr.parallel");
+                    errored = true;
                 }
+                mainLock = new Semaphore(1);
             }
-        }
-
-        int correctTests = 0;
-        long accumulatedTime = 0;
-
-        try
-        {
-            new ProcessBuilder("echo").start().waitFor(); // warmup process builder
-        }
-        catch (final IOException e)
-        {}
-
-        Runtime.getRuntime()
-            .addShutdownHook(new Thread(() -> Optional.ofNullable(runningProcess.getAndSet(null)).ifPresent(Process::destroy)));
-
-        for (final TestInfo test : testInfos.values().stream().sorted(Comparator.comparing(t -> t.name)).toList())
-        {
-            System.out.println("===== TEST " + test.name + " =====");
 
-            test.printDescription(System.out);
-
-            if (test.prepare(testFolder))
+            if (sampleIntervalProperty != null)
             {
-                System.out.println();
-                continue;
+                try
+                {
+                    sampleInterval = Long.parseLong(sampleIntervalProperty);
+                    if (sampleInterval < 1)
+                    {
+                        System.err.println("non-positive sample interval: " + sampleInterval);
+                        errored = true;
+                    }
+                }
+                catch (NumberFormatException e)
+                {
+                    System.err.println("unparsable sample interval: " + e.getMessage());
+                    errored = true;
+                }
             }
 
-            // Generate input
-            if (test.hasGenerate())
+            if (benchmarkProperty != null)
             {
-                System.out.println("Generating input...");
-
-                if (test.runProcess(test.prepareGenerateInput(testFolder).start()))
+                try
                 {
-                    System.out.println("Input generation timeout, skipping...");
-                    System.out.println();
-                    continue;
+                    benchmarkRuns = Integer.parseInt(benchmarkProperty);
+                    if (benchmarkWarmupProperty != null)
+                    {
+                        benchmarkWarmup = Integer.parseInt(benchmarkWarmupProperty);
+                    }
+                    if (benchmarkThresholdProperty != null)
+                    {
+                        benchmarkThreshold = Double.parseDouble(benchmarkThresholdProperty);
+                    }
+                    if (benchmarkRuns < 0 || benchmarkWarmup < 0)
+                    {
+                        System.err.println("negative benchmark runs: " + benchmarkRuns + "/" + benchmarkWarmup);
+                        errored = true;
+                    }
+                }
+                catch (NumberFormatException e)
+                {
+                    System.err.println("unparsable benchmark: " + e.getMessage());
+                    errored = true;
                 }
+                benchmarkUpdate = Boolean.parseBoolean(benchmarkUpdateProperty);
             }
 
-            // copy input files to rundir
-            if (test.hasInputFiles())
+            if (shardProperty != null)
             {
-                final List<String> mainArgs = new ArrayList<>(Arrays.asList(mainBase));
-                if (test.hasArguments())
+                final String[] shard = shardProperty.split("/");
+                try
                 {
-                    mainArgs.addAll(Files.readAllLines(test.args));
+                    shardIndex = Integer.parseInt(shard[0].trim());
+                    shardCount = Integer.parseInt(shard[1].trim());
+                    if (shard.length != 2 || shardCount < 1 || shardIndex < 1 || shardIndex > shardCount)
+                    {
+                        System.err.println("invalid shard, expected i/n with 1 <= i <= n: " + shardProperty);
+                        errored = true;
+                    }
+                }
+                catch (NumberFormatException | ArrayIndexOutOfBoundsException e)
+                {
+                    System.err.println("unparsable shard, expected i/n: " + shardProperty);
+                    errored = true;
                 }
+            }
 
-                // do not copy inFiles into runDir if args contains inFiles target
-                if (!mainArgs.stream().anyMatch(a -> a.contains("$$INPUT_FILES_")) || testFolder.equals(test.runDir))
+            if (orderProperty != null)
+            {
+                switch (orderProperty)
                 {
-                    for (final Path in : test.inFiles)
+                    case "name" -> historyOrder = false;
+                    case "history" -> historyOrder = true;
+                    default ->
                     {
-                        if (Files.exists(in)) // path might be generated by input gen, thus it may stay in runDir
-                        {
-                            final Path fileName = in.getFileName();
-                            System.out.println("\tCopying \"" + fileName + "\" to run directory");
-
-                            Files.copy(in, test.runDir.resolve(fileName), StandardCopyOption.REPLACE_EXISTING);
-                        }
+                        System.err.println("unknown order, expected name or history: " + orderProperty);
+                        errored = true;
                     }
                 }
             }
 
-            // Generate output and error
-            if (test.hasRefSolution())
+            if (failFastProperty != null)
             {
-                System.out.println("Generating reference solution...");
-
-                final Process processGen = test.prepareGenerateOutput(testFolder).start();
-                if (!test.hasInput())
+                try
                 {
-                    processGen.getOutputStream().close();
+                    failFast = Integer.parseInt(failFastProperty);
                 }
-                if (test.runProcess(processGen))
+                catch (NumberFormatException e)
                 {
-                    System.out.println("Reference solution generation timeout, skipping...");
-                    System.out.println();
-                    continue;
+                    System.err.println("unparsable fail fast count: " + failFastProperty);
+                    errored = true;
                 }
+            }
+
+            if (resultFileProperty != null)
+            {
+                resultFile = Path.of(resultFileProperty).toAbsolutePath().normalize();
+            }
 
-                // move reference files from rundir to testdir
-                if (test.hasOutputFiles())
+            if (mainProperty == null && daemonProperty == null)
+            {
+                System.err.println("missing -Dtr.main in format 'path_to_executable arguments'");
+                errored = true;
+                mainBase = null;
+            }
+            else
+            {
+                mainBase = mainProperty == null ? null : mainProperty.split(" "); // arguments splitting? not so easy
+                try
                 {
-                    for (final Path out : test.outFiles)
+                    // daemon gets main by request
+                    if (mainBase != null)
                     {
-                        final Path fileName = out.getFileName();
-                        final Path reference = test.runDir.resolve(fileName).toAbsolutePath().normalize();
-
-                        if (Files.exists(reference))
-                        {
-                            final Path target = testFolder.resolve(test.name + "." + fileName);
-                            System.out.printf("\tMoving reference file \"%s\" from run directory to test folder as \"%s\"%n",
-                                reference.getFileName(),
-                                target.getFileName());
-
-                            Files.move(reference, target, StandardCopyOption.REPLACE_EXISTING);
-                        }
+                        Template.compileAll(Arrays.asList(mainBase));
                     }
                 }
-
-                System.out.println();
+                catch (IllegalArgumentException e)
+                {
+                    System.err.println("malformed -Dtr.main: " + e.getMessage());
+                    errored = true;
+                }
             }
 
-            // execute "main"
-            boolean timeouted = false;
-            final ProcessBuilder pb = test.prepareMain(testFolder, mainBase);
-            final long start = System.nanoTime();
-            final Process process = pb.start();
-            if (!test.hasInput())
+            if (inProcessProperty != null && Boolean.parseBoolean(inProcessProperty))
             {
-                process.getOutputStream().close();
+                inProcess = true;
+                if (mainBase != null && mainBase.length < 2)
+                {
+                    System.err.println("in-process -Dtr.main must be in format 'classpath main_class arguments'");
+                    errored = true;
+                }
             }
-            if (test.runProcess(process))
+
+            if (fileExtensionProperty != null && FileExtension.changeExtensions(fileExtensionProperty.split(",")))
             {
-                timeouted = true;
+                errored = true;
             }
-            final long end = System.nanoTime();
-
-            // blame human for being SgTrUePaItD
-
-            boolean isCorrect = true;
-            isCorrect &= checkExitCode(test, process.exitValue());
-            isCorrect &= checkStream(test.output, process.getInputStream(), "out");
-            isCorrect &= checkStream(test.error, process.getErrorStream(), "err");
-            isCorrect &= checkOutputFiles(test, testFolder);
-            correctTests += !timeouted && isCorrect ? 1 : 0;
-
-            System.out.printf("%s\ttime: \t%.2fms%n%n%n",
-                timeouted ? "TIMEOUT " : (isCorrect ? "OK      " : "ERROR   "),
-                (end - start) / 1000000.0d);
-
-            accumulatedTime += (end - start);
-        }
-
-        System.out.printf("CORRECT: %d/%d\n\t\ttime: \t%.2fms\n", correctTests, testInfos.size(), accumulatedTime / 1000000.0d);
-        if (correctTests == testInfos.size())
-        {
-            System.out.printf(
-                "%n=====>>>>>     YOU ARE     <<<<<=====%n=====>>>>>     AWESOME     <<<<<=====%n=====>>>>>    WELL DONE    <<<<<=====%n%n");
-        }
-    }
-
-    private static boolean checkOutputFiles(final TestInfo test, final Path testFolder) throws IOException
-    {
-        if (!test.hasOutputFiles())
-        {
-            return true;
-        }
-
-        boolean isCorrect = true;
-
-        for (final Path user : test.outFiles)
-        {
-            final String fileName = user.getFileName().toString();
-            final Path reference = testFolder.resolve(test.runDir.relativize(user));
 
-            if (debug)
+            if (folderProperty == null)
             {
-                System.err.println("DEBUG: comparing: " + user + " <> " + reference);
+                if (daemonProperty == null)
+                {
+                    System.err.println("missing -Dtr.folder pointing to folder with .in/out/err/... files");
+                    errored = true;
+                }
+                testFolder = null; // irrelevant
+            }
+            else
+            {
+                testFolder = Path.of(folderProperty).toAbsolutePath().normalize();
+                if (!Files.isDirectory(testFolder))
+                {
+                    System.err.println("non-directory path in -Dtr.folder: " + testFolder);
+                    errored = true;
+                }
             }
 
-            if (!Files.exists(user))
+            if (genCacheProperty != null)
             {
-                System.out.println("Missing user output file of name \"" + fileName + "\" at: " + user.toString());
-                System.out.println();
+                generatorCache = new GeneratorCache(Path.of(genCacheProperty).toAbsolutePath().normalize());
+                if (Boolean.parseBoolean(genCacheClearProperty))
+                {
+                    generatorCache.clear();
+                }
+            }
 
-                isCorrect = false;
+            if (stageProperty != null)
+            {
+                try
+                {
+                    Staging.root = Files.createDirectories(Path.of(stageProperty).toAbsolutePath().normalize());
+                }
+                catch (IOException e)
+                {
+                    System.err.println("unusable stage directory: " + e.getMessage());
+                    errored = true;
+                }
             }
-            else if (!Files.exists(reference))
+            if (stageHardlinkProperty != null)
             {
-                System.out.println("Missing reference output file of name \"" + fileName + "\" at: " + reference.toString());
-                System.out.println();
+                Staging.hardlinks = Boolean.parseBoolean(stageHardlinkProperty);
+            }
 
-                isCorrect = false;
+            streamInput = Boolean.parseBoolean(genStreamProperty);
+            persistInput = Boolean.parseBoolean(genStreamPersistProperty);
+            if (genStreamMemoryProperty != null)
+            {
+                try
+                {
+                    streamMemory = MemoryLimit.parseSize(genStreamMemoryProperty);
+                }
+                catch (NumberFormatException e)
+                {
+                    System.err.println("unparsable stream memory: " + genStreamMemoryProperty);
+                    errored = true;
+                }
             }
-            else
+            if (genStreamSpillProperty != null)
             {
-                final long firstMismatchByte = Files.mismatch(user, reference);
-                if (firstMismatchByte != -1)
+                spillDirectory = Path.of(genStreamSpillProperty).toAbsolutePath().normalize();
+                if (!Files.isDirectory(spillDirectory))
                 {
-                    System.out.println("Output file \"" + fileName + "\" does not match reference, relative byte lookup:");
-
-                    final ByteBuffer buffer = ByteBuffer.allocate(2 * DUMP_AROUND_SIZE + 1);
-                    final long position = Math.max(0, firstMismatchByte - DUMP_AROUND_SIZE);
+                    System.err.println("spill directory does not exist: " + spillDirectory);
+                    errored = true;
+                }
+            }
 
-                    try (var fd = Files.newByteChannel(user, StandardOpenOption.READ))
+            try
+            {
+                // daemon opens reporters for every request
+                reporters.addAll(openReporters(consoleProperty, daemonProperty != null ? null : reportJsonlProperty,
+                    daemonProperty != null ? null : reportJunitProperty, testFolder, System.out));
+            }
+            catch (final IllegalArgumentException e)
+            {
+                System.err.println(e.getMessage());
+                errored = true;
+            }
+            int daemonRequests = 4;
+            if (daemonRequestsProperty != null)
+            {
+                try
+                {
+                    daemonRequests = Integer.parseInt(daemonRequestsProperty);
+                    if (daemonRequests < 1)
+                    {
+                        System.err.println("non-positive daemon request count: " + daemonRequests);
+                        errored = true;
+                    }
+                }
+                catch (NumberFormatException e)
+                {
+                    System.err.println("unparsable daemon_requests: " + e.getMessage());
+                    errored = true;
+                }
+            }
+            daemon = daemonProperty == null || errored
+                ? null
+                : new Daemon(Path.of(daemonProperty).toAbsolutePath().normalize(), consoleProperty, daemonRequests);
+            if (daemon != null && (testFolder != null || mainBase != null))
+            {
+                System.err.println("-Dtr.daemon takes -Dtr.folder and -Dtr.main from requests");
+                errored = true;
+            }
+
+            watch = Boolean.parseBoolean(watchProperty);
+            if (watch && shardCount > 1)
+            {
+                System.err.println("-Dtr.watch can not be combined with -Dtr.shard");
+                errored = true;
+            }
+            if (daemon != null && (watch || shardCount > 1))
+            {
+                System.err.println("-Dtr.daemon can not be combined with -Dtr.watch or -Dtr.shard");
+                errored = true;
+            }
+            if (watchDebounceProperty != null)
+            {
+                try
+                {
+                    Watcher.debounceMillis = Math.max(0, ProcessSupervisor.parseDuration(watchDebounceProperty));
+                }
+                catch (NumberFormatException e)
+                {
+                    System.err.println("unparsable watch debounce: " + watchDebounceProperty);
+                    errored = true;
+                }
+            }
+
+            if (stressProperty != null || stressTimeProperty != null)
+            {
+                Stress.enabled = true;
+                try
+                {
+                    Stress.iterations = stressProperty == null ? 0 : Long.parseLong(stressProperty);
+                    Stress.budgetMillis = stressTimeProperty == null ? 0 : ProcessSupervisor.parseDuration(stressTimeProperty);
+                    if (stressSeedProperty != null)
+                    {
+                        Stress.firstSeed = Long.parseLong(stressSeedProperty);
+                    }
+                    if (stressShrinkProperty != null)
+                    {
+                        Stress.shrinkRuns = Integer.parseInt(stressShrinkProperty);
+                    }
+                    if (Stress.iterations < 0 || Stress.budgetMillis < 0 || Stress.shrinkRuns < 0)
+                    {
+                        System.err.println("negative stress budget: " + Stress.iterations + "/" + Stress.budgetMillis + "ms/" + Stress.shrinkRuns);
+                        errored = true;
+                    }
+                    if (Stress.iterations == 0 && Stress.budgetMillis == 0)
+                    {
+                        System.err.println("-Dtr.stress needs iteration count or -Dtr.stress_time");
+                        errored = true;
+                    }
+                }
+                catch (NumberFormatException e)
+                {
+                    System.err.println("unparsable stress: " + e.getMessage());
+                    errored = true;
+                }
+                if (watch || daemon != null || benchmarkRuns > 0)
+                {
+                    System.err.println("-Dtr.stress can not be combined with -Dtr.watch, -Dtr.daemon or -Dtr.bench");
+                    errored = true;
+                }
+            }
+
+            if (inProcess && !errored && !InProcessProcess.install())
+            {
+                System.err.println("-Dtr.main_inprocess needs security manager to trap System.exit of tested program, "
+                    + "run with -Djava.security.manager=allow (JDK 18 to 23, JDK 24+ can not run main in process)");
+                errored = true;
+            }
+
+            if (errored)
+            {
+                throw new IllegalArgumentException("Failed to setup: see above for further informantion");
+            }
+            // daemon requests and stress iterations run alongside each other
+            exclusiveChildren = parallelism == 1 && pipelineDepths == null && daemon == null && !Stress.enabled;
+
+            incremental = Boolean.parseBoolean(incrementalProperty);
+            workspace = testFolder == null ? null : new Workspace(testFolder, historyProperty != null ? Path.of(historyProperty) : null);
+
+            if (Boolean.parseBoolean(manifestProperty) && testFolder != null)
+            {
+                manifest = Manifest.load(testFolder.resolveSibling(testFolder.getFileName() + ".trmanifest"));
+            }
+
+            if (debug)
+            {
+                System.err.println("DEBUG: testFolder: " + testFolder);
+                System.err.println("DEBUG: runDir: " + Paths.get(".").toAbsolutePath().normalize());
+                System.err.println();
+            }
+        }
+
+        if (daemon != null)
+        {
+            try
+            {
+                new ProcessBuilder("echo").start().waitFor(); // warmup process builder
+            }
+            catch (final IOException e)
+            {}
+
+            Runtime.getRuntime().addShutdownHook(new Thread(ProcessSupervisor::shutdown));
+            daemon.serve();
+            return;
+        }
+
+        final Session session = new Session(workspace, mainBase, System.out, reporters, resultFile);
+        // registered before first run, so changes made meanwhile are not missed
+        final Watcher watcher = watch ? new Watcher(session) : null;
+        final Map<String, TestDescriptor> testInfos = discoverTests(testFolder);
+        if (manifest != null)
+        {
+            manifest.save();
+        }
+
+        try
+        {
+            new ProcessBuilder("echo").start().waitFor(); // warmup process builder
+        }
+        catch (final IOException e)
+        {}
+
+        Runtime.getRuntime().addShutdownHook(new Thread(ProcessSupervisor::shutdown));
+
+        List<TestDescriptor> sortedTests = testInfos.values().stream().sorted(Comparator.comparing(t -> t.name)).toList();
+        if (shardCount > 1)
+        {
+            sortedTests = selectShard(session, sortedTests);
+        }
+        if (historyOrder)
+        {
+            sortedTests = orderByHistory(session, sortedTests);
+        }
+        if (Stress.enabled)
+        {
+            new Stress(session).run(sortedTests);
+        }
+        else
+        {
+            runSuite(session, sortedTests);
+        }
+
+        if (watcher != null)
+        {
+            // keeps running until Test Runner is interrupted
+            Runtime.getRuntime().addShutdownHook(new Thread(session::closeReporters));
+            watcher.watch(testInfos);
+        }
+        session.closeReporters();
+
+        if (InProcessProcess.abandoned)
+        {
+            // abandoned in-process workers would keep JVM alive
+            System.out.flush();
+            System.exit(0);
+        }
+    }
+
+    private static List<Reporter> openReporters(final String console,
+        final String jsonl,
+        final String junit,
+        final Path testFolder,
+        final PrintStream out) throws IOException
+    {
+        final List<Reporter> reporters = new ArrayList<>();
+        switch (console == null ? "full" : console)
+        {
+            case "full" -> reporters.add(new ConsoleReporter(true, out));
+            case "summary" -> reporters.add(new ConsoleReporter(false, out));
+            case "none" ->
+            {}
+            default -> throw new IllegalArgumentException("unknown console, expected full, summary or none: " + console);
+        }
+        if (jsonl != null)
+        {
+            reporters.add(new JsonLinesReporter(Path.of(jsonl).toAbsolutePath().normalize()));
+        }
+        if (junit != null && testFolder != null)
+        {
+            reporters.add(new JUnitReporter(Path.of(junit).toAbsolutePath().normalize(), testFolder.getFileName().toString()));
+        }
+        return reporters;
+    }
+
+    // runs tests and prints summary, watch mode runs it again for every change
+    private static void runSuite(final Session session, final List<TestDescriptor> sortedTests) throws Exception
+    {
+        final PrintStream console = session.console;
+        session.cancelled = false;
+        session.failures.set(0);
+        session.stagingNanos.set(0);
+        session.cacheHits.set(0);
+        session.cacheMisses.set(0);
+        if (session.resultDatabase != null)
+        {
+            session.resultDatabase.digestTests(sortedTests, session.mainBase);
+        }
+        final long wallStart = System.nanoTime();
+        final Pipeline pipeline = pipelineDepths == null ? null : new Pipeline(session, pipelineDepths);
+        final List<TestResult> results = pipeline != null ? pipeline.run(sortedTests) :
+            parallelism > 1 ? runTestsParallel(session, sortedTests) :
+            runTestsSequential(session, sortedTests);
+        final long wallEnd = System.nanoTime();
+        for (final Reporter reporter : session.reporters)
+        {
+            reporter.flush();
+        }
+
+        int correctTests = 0;
+        long accumulatedTestTime = 0;
+        final ProcessUsage mainUsage = new ProcessUsage();
+        final ProcessUsage generatorUsage = new ProcessUsage();
+        for (final TestResult result : results)
+        {
+            correctTests += result.isCorrect() ? 1 : 0;
+            accumulatedTestTime += result.testNanos;
+            mainUsage.add(result.mainUsage);
+            generatorUsage.add(result.generatorUsage);
+        }
+
+        console.printf("CORRECT: %d/%d\n\t\ttime: \t%.2fms\n\t\t%s\n\t\tgen: \t%.2fms\t%s\n\t\ttests: \t%.2fms\n\t\twall: \t%.2fms\n",
+            correctTests,
+            results.size(),
+            mainUsage.wallNanos / 1000000.0d,
+            mainUsage.describe(),
+            generatorUsage.wallNanos / 1000000.0d,
+            generatorUsage.describe(),
+            accumulatedTestTime / 1000000.0d,
+            (wallEnd - wallStart) / 1000000.0d);
+        if (pipeline != null)
+        {
+            pipeline.printStages(console);
+        }
+        if (session.cancelled)
+        {
+            console.printf("\t\tfail fast: \t%d tests not run after %d failures\n", sortedTests.size() - results.size(), failFast);
+        }
+        if (session.stagingNanos.get() > 0)
+        {
+            console.printf("\t\tstaging: \t%.2fms\n", session.stagingNanos.get() / 1000000.0d);
+        }
+        if (generatorCache != null)
+        {
+            console.printf("\t\tcache: \t%d hits, %d misses\n", session.cacheHits.get(), session.cacheMisses.get());
+        }
+        if (session.resultDatabase != null)
+        {
+            console.printf("\t\tcached: \t%d\n", results.stream().filter(r -> r.cached).count());
+            session.resultDatabase.save(results);
+        }
+        if (session.baseline != null)
+        {
+            final long regressed = results.stream().filter(r -> r.verdict == Verdict.REGRESSED).count();
+            console.printf("\t\tregressed: \t%d\n", regressed);
+            session.baseline.save(results);
+        }
+        if (correctTests == results.size())
+        {
+            console.printf(
+                "%n=====>>>>>     YOU ARE     <<<<<=====%n=====>>>>>     AWESOME     <<<<<=====%n=====>>>>>    WELL DONE    <<<<<=====%n%n");
+        }
+
+        // shards keep history read-only so that all machines partition alike, merge updates it instead
+        if (shardCount == 1 && session.recordHistory)
+        {
+            session.history.update(results);
+            session.history.save();
+        }
+        if (session.resultFile != null)
+        {
+            ResultFile.write(session.resultFile, results);
+        }
+
+        Staging.awaitCleanups();
+    }
+
+    private static List<TestDescriptor> selectShard(final Session session, final List<TestDescriptor> tests)
+    {
+        final History history = session.history;
+        final long[] durations = new long[tests.size()];
+        long known = 0;
+        long knownSum = 0;
+        for (int i = 0; i < durations.length; i++)
+        {
+            final HistoryEntry entry = history.entries.get(tests.get(i).name);
+            durations[i] = entry == null ? -1 : entry.durationNanos;
+            if (durations[i] >= 0)
+            {
+                known++;
+                knownSum += durations[i];
+            }
+        }
+
+        final List<TestDescriptor> selected = new ArrayList<>();
+        if (known == 0)
+        {
+            final CRC32 crc = new CRC32();
+            for (final TestDescriptor test : tests)
+            {
+                crc.reset();
+                crc.update(test.name.getBytes(StandardCharsets.UTF_8));
+                if (crc.getValue() % shardCount == shardIndex - 1)
+                {
+                    selected.add(test);
+                }
+            }
+            session.console.printf("Shard %d/%d: %d of %d tests (by name hash)%n%n", shardIndex, shardCount, selected.size(), tests.size());
+            return selected;
+        }
+
+        // greedy bin packing, longest test first into least loaded shard, tests without history take average duration
+        final long average = knownSum / known;
+        for (int i = 0; i < durations.length; i++)
+        {
+            durations[i] = durations[i] < 0 ? average : durations[i];
+        }
+        final List<Integer> order = new ArrayList<>(tests.size());
+        for (int i = 0; i < durations.length; i++)
+        {
+            order.add(i);
+        }
+        order.sort(Comparator.<Integer>comparingLong(i -> -durations[i]).thenComparing(i -> tests.get(i).name));
+
+        final long[] loads = new long[shardCount];
+        final boolean[] assigned = new boolean[tests.size()];
+        for (final int i : order)
+        {
+            int lightest = 0;
+            for (int shard = 1; shard < shardCount; shard++)
+            {
+                lightest = loads[shard] < loads[lightest] ? shard : lightest;
+            }
+            loads[lightest] += durations[i];
+            assigned[i] = lightest == shardIndex - 1;
+        }
+
+        for (int i = 0; i < assigned.length; i++)
+        {
+            if (assigned[i])
+            {
+                selected.add(tests.get(i));
+            }
+        }
+        session.console.printf("Shard %d/%d: %d of %d tests (balanced by history, estimated %.2fms)%n%n",
+            shardIndex,
+            shardCount,
+            selected.size(),
+            tests.size(),
+            loads[shardIndex - 1] / 1000000.0d);
+        return selected;
+    }
+
+    private static List<TestDescriptor> orderByHistory(final Session session, final List<TestDescriptor> tests)
+    {
+        final History history = session.history;
+        final HistoryEntry none = new HistoryEntry();
+        final List<TestDescriptor> ordered = new ArrayList<>(tests);
+        ordered.sort(Comparator.<TestDescriptor, Boolean>comparing(t -> !history.entries.getOrDefault(t.name, none).failed)
+            .thenComparing(t -> -history.entries.getOrDefault(t.name, none).flakeRate())
+            .thenComparing(t -> t.name));
+
+        // print only tests moved ahead, rest keeps name order, so run can be reproduced from output
+        final List<String> failing = new ArrayList<>();
+        final List<String> flaky = new ArrayList<>();
+        for (final TestDescriptor test : ordered)
+        {
+            final HistoryEntry entry = history.entries.getOrDefault(test.name, none);
+            if (entry.failed)
+            {
+                failing.add(test.name);
+            }
+            else if (entry.flips > 0)
+            {
+                flaky.add(test.name);
+            }
+        }
+        session.console.printf("Order: history, failing: [%s], flaky: [%s], then by name%n%n",
+            String.join(", ", failing),
+            String.join(", ", flaky));
+        return ordered;
+    }
+
+    private static void mergeResults(final String[] files, final Path historyFile) throws IOException
+    {
+        final Map<String, TestResult> merged = new TreeMap<>();
+        for (final String file : files)
+        {
+            for (final TestResult result : ResultFile.read(Path.of(file.trim())))
+            {
+                if (merged.put(result.name, result) != null)
+                {
+                    System.err.println("WARNING: test " + result.name + " found in multiple partial results, using last one");
+                }
+            }
+        }
+
+        int correctTests = 0;
+        long accumulatedTime = 0;
+        long accumulatedTestTime = 0;
+        for (final TestResult result : merged.values())
+        {
+            if (result.isCorrect())
+            {
+                correctTests++;
+            }
+            else
+            {
+                System.out.printf("%-8s\t%s%n", result.verdict, result.name);
+            }
+            accumulatedTime += result.mainUsage.wallNanos;
+            accumulatedTestTime += result.testNanos;
+        }
+
+        System.out.printf("MERGED: %d partial results%n", files.length);
+        System.out.printf("CORRECT: %d/%d\n\t\ttime: \t%.2fms\n\t\ttests: \t%.2fms\n",
+            correctTests,
+            merged.size(),
+            accumulatedTime / 1000000.0d,
+            accumulatedTestTime / 1000000.0d);
+        if (correctTests == merged.size())
+        {
+            System.out.printf(
+                "%n=====>>>>>     YOU ARE     <<<<<=====%n=====>>>>>     AWESOME     <<<<<=====%n=====>>>>>    WELL DONE    <<<<<=====%n%n");
+        }
+
+        if (historyFile != null)
+        {
+            final History history = History.load(historyFile);
+            history.update(List.copyOf(merged.values()));
+            history.save();
+        }
+    }
+
+    private static Map<String, TestDescriptor> discoverTests(final Path testFolder) throws IOException
+    {
+        final long folderModified = Files.getLastModifiedTime(testFolder).to(TimeUnit.NANOSECONDS);
+        Map<String, Integer> listing = manifest == null ? null : manifest.listing(folderModified);
+        if (listing == null)
+        {
+            listing = listTests(testFolder);
+        }
+
+        // config files are read and parsed in parallel, each at most once
+        final Map<String, TestDescriptor> testInfos = new ConcurrentHashMap<>(listing.size());
+        try
+        {
+            listing.entrySet().parallelStream().forEach(entry -> {
+                try
+                {
+                    testInfos.put(entry.getKey(), TestDescriptor.read(entry.getKey(), testFolder, entry.getValue()));
+                }
+                catch (final IOException e)
+                {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+        catch (final UncheckedIOException e)
+        {
+            throw e.getCause();
+        }
+
+        if (manifest != null)
+        {
+            manifest.update(folderModified, listing);
+        }
+        return testInfos;
+    }
+
+    private static ExecutorService newIoExecutor()
+    {
+        // stream drainers spend their life blocked on pipes, virtual threads (Java 21+) make them cheap
+        try
+        {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch (final ReflectiveOperationException e)
+        {
+            return Executors.newCachedThreadPool(r -> {
+                final Thread thread = new Thread(r, "TestRunner-io");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    private static Map<String, Integer> listTests(final Path testFolder) throws IOException
+    {
+        final Map<String, Integer> listing = new HashMap<>();
+
+        try (var it = Files.newDirectoryStream(testFolder))
+        {
+            for (final Path testPath : it)
+            {
+                final String fileNameWithExt = testPath.getFileName().toString();
+                final int lastPeriod = fileNameWithExt.lastIndexOf('.');
+                if (lastPeriod == -1)
+                {
+                    continue;
+                }
+
+                final var fileExtension = FileExtension.get(fileNameWithExt.substring(lastPeriod + 1));
+                if (fileExtension != null)
+                {
+                    final String fileName = fileNameWithExt.substring(0, lastPeriod);
+                    listing.merge(fileName, fileExtension.bit(), (a, b) -> a | b);
+                }
+            }
+        }
+
+        return listing;
+    }
+
+    private static List<TestResult> runTestsSequential(final Session session, final List<TestDescriptor> tests) throws Exception
+    {
+        final List<TestResult> results = new ArrayList<>(tests.size());
+        for (final TestDescriptor test : tests)
+        {
+            if (session.cancelled)
+            {
+                break;
+            }
+            final TestResult result = runTestBuffered(session, test);
+            if (result == null)
+            {
+                continue; // killed by fail fast
+            }
+            session.report(result);
+            results.add(result);
+        }
+        return results;
+    }
+
+    private static List<TestResult> runTestsParallel(final Session session, final List<TestDescriptor> tests) throws Exception
+    {
+        final ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        try
+        {
+            final List<Future<TestResult>> futures = new ArrayList<>(tests.size());
+            for (final TestDescriptor test : tests)
+            {
+                futures.add(executor.submit(() -> session.cancelled ? null : runTestBuffered(session, test)));
+            }
+
+            final List<TestResult> results = new ArrayList<>(tests.size());
+            for (final Future<TestResult> future : futures)
+            {
+                final TestResult result;
+                try
+                {
+                    result = future.get();
+                }
+                catch (final ExecutionException e)
+                {
+                    throw e.getCause() instanceof Exception ex ? ex : e;
+                }
+                if (result == null)
+                {
+                    continue;
+                }
+
+                session.report(result);
+                results.add(result);
+            }
+            return results;
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    // buffer whole test block, so it can be reported as one piece in sorted order
+    private static TestResult runTestBuffered(final Session session, final TestDescriptor test) throws Exception
+    {
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        final PrintStream out = new PrintStream(buffer, false);
+        final TestResult result = runTest(session, test, out);
+        out.flush();
+        if (result != null)
+        {
+            result.console = buffer.toByteArray();
+        }
+        return result;
+    }
+
+    private static TestResult runTest(final Session session, final TestDescriptor descriptor, final PrintStream out) throws Exception
+    {
+        final Path testFolder = session.testFolder;
+        final TestRun run = new TestRun(session, descriptor, out);
+        try
+        {
+            generateInput(run, testFolder);
+            generateReference(run, testFolder);
+            executeMain(run, testFolder);
+            verify(run, testFolder);
+            return session.recordFailure(run);
+        }
+        finally
+        {
+            run.release();
+        }
+    }
+
+    // stage 1: prepare test, generate input and copy input files
+    private static void generateInput(final TestRun run, final Path testFolder) throws Exception
+    {
+        final TestInfo test = run.test;
+        final PrintStream out = run.out;
+
+        out.println("===== TEST " + test.name + " =====");
+
+        if (run.session.resultDatabase != null && run.session.resultDatabase.isUnchanged(test))
+        {
+            out.printf("%-8s\t(cached)%n%n%n", Verdict.OK);
+            run.result = TestResult.skipped(test.name, Verdict.OK, run.testStart, new ProcessUsage());
+            run.result.cached = true;
+            return;
+        }
+
+        test.printDescription(out);
+
+        if (test.prepare(testFolder, out))
+        {
+            out.println();
+            run.result = TestResult.skipped(test.name, Verdict.ERROR, run.testStart, run.generatorUsage);
+            return;
+        }
+
+        // tests copying files from/to shared run directory must not overlap
+        if ((test.hasInputFiles() || test.hasOutputFiles()) && !test.scratch)
+        {
+            final Semaphore runDirLock = runDirLocks.computeIfAbsent(test.runDir, dir -> new Semaphore(1));
+            final long lockStart = System.nanoTime();
+            runDirLock.acquire();
+            run.lockWaitNanos = System.nanoTime() - lockStart;
+            run.runDirLock = runDirLock;
+        }
+
+        // Generate input
+        if (test.hasGenerate())
+        {
+            out.println("Generating input...");
+
+            final ProcessBuilder pbGenIn = test.prepareGenerateInput(testFolder);
+            // input generator might produce input files, those are not tracked by cache, streamed input is not cached either
+            final String cacheKey = generatorCache == null || test.hasInputFiles() || streamInput ? null :
+                generatorCache.key("genin", pbGenIn.command(), test, false);
+            if (cacheKey != null && run.session.restoreGenerated(cacheKey, artifact -> test.input))
+            {
+                out.println("\tRestored input from generator cache");
+            }
+            else
+            {
+                final ProcessMonitor monitorGenIn = ProcessMonitor.launch(pbGenIn, false, test.generatorMemoryLimit(), -1);
+                final Process processGenIn = monitorGenIn.process;
+                final Future<?> filling = test.inputBuffer == null ? null : ioExecutor.submit(() -> {
+                    try (var persist = persistInput ? Files.newOutputStream(test.streamedInput) : null)
+                    {
+                        test.inputBuffer.fill(processGenIn.getInputStream(), persist);
+                    }
+                    return null;
+                });
+                final boolean timeouted = test.runProcess(processGenIn);
+                final ProcessUsage usageGenIn = monitorGenIn.finish();
+                if (filling != null)
+                {
+                    awaitFilling(filling, processGenIn.getInputStream());
+                }
+                run.generatorUsage.add(usageGenIn);
+                out.printf("\ttime: \t%.2fms\t%s%n", usageGenIn.wallNanos / 1000000.0d, usageGenIn.describe());
+                if (test.inputBuffer != null)
+                {
+                    out.printf("\tinput: \t%d bytes streamed, %d bytes spilled%n",
+                        test.inputBuffer.length,
+                        test.inputBuffer.length - test.inputBuffer.memoryLength);
+                }
+
+                if (monitorGenIn.memoryExceeded)
+                {
+                    out.println("Input generation exceeded memory limit, skipping...");
+                    out.println();
+                    run.result = TestResult.skipped(test.name, Verdict.MEMORY_LIMIT, run.testStart, run.generatorUsage);
+                    return;
+                }
+                if (timeouted)
+                {
+                    out.println("Input generation timeout, skipping...");
+                    out.println();
+                    run.result = TestResult.skipped(test.name, Verdict.TIMEOUT, run.testStart, run.generatorUsage);
+                    return;
+                }
+
+                if (cacheKey != null && processGenIn.exitValue() == 0)
+                {
+                    generatorCache.store(cacheKey, Map.of(GeneratorCache.STDIN, test.input));
+                }
+            }
+        }
+
+        // copy input files to rundir
+        if (test.hasInputFiles())
+        {
+            // do not copy inFiles into runDir if args contains inFiles target
+            if (!test.passesInputFiles(run.session.mainTemplates) || testFolder.equals(test.runDir))
+            {
+                final long stagingStart = System.nanoTime();
+                for (final Path in : test.inFiles)
+                {
+                    if (Files.exists(in)) // path might be generated by input gen, thus it may stay in runDir
+                    {
+                        final Path fileName = in.getFileName();
+                        if (test.scratch)
+                        {
+                            final String method = Staging.stage(in, test.runDir.resolve(fileName));
+                            out.println("\tStaging \"" + fileName + "\" to run directory: " + method);
+                        }
+                        else
+                        {
+                            out.println("\tCopying \"" + fileName + "\" to run directory");
+                            Files.copy(in, test.runDir.resolve(fileName), StandardCopyOption.REPLACE_EXISTING);
+                        }
+                    }
+                }
+                if (test.scratch)
+                {
+                    final long stagingNanos = System.nanoTime() - stagingStart;
+                    run.session.stagingNanos.addAndGet(stagingNanos);
+                    out.printf("\tstaging: \t%.2fms%n", stagingNanos / 1000000.0d);
+                }
+            }
+        }
+    }
+
+    private static void awaitFilling(final Future<?> filling, final InputStream source) throws Exception
+    {
+        try
+        {
+            filling.get(StreamComparator.CLOSE_GRACE_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        catch (final TimeoutException e)
+        {
+            // pipe kept open by someone else (eg. grandchild process)
+            source.close();
+            filling.cancel(true);
+        }
+        catch (final ExecutionException e)
+        {
+            throw e.getCause() instanceof Exception ex ? ex : e;
+        }
+    }
+
+    // stage 2: generate reference output and error
+    private static void generateReference(final TestRun run, final Path testFolder) throws Exception
+    {
+        final TestInfo test = run.test;
+        final PrintStream out = run.out;
+        if (run.result != null || !test.hasRefSolution())
+        {
+            return;
+        }
+
+        out.println("Generating reference solution...");
+
+        final ProcessBuilder pbGen = test.prepareGenerateOutput(testFolder);
+        final String cacheKey = generatorCache == null ? null : generatorCache.key("gen", pbGen.command(), test, true);
+        if (cacheKey != null && run.session.restoreGenerated(cacheKey, artifact -> switch (artifact)
+        {
+            case GeneratorCache.STDOUT -> test.output;
+            case GeneratorCache.STDERR -> test.error;
+            default -> testFolder.resolve(test.name + "." + artifact.substring(GeneratorCache.OUT_FILE_PREFIX.length()));
+        }))
+        {
+            out.println("\tRestored reference solution from generator cache");
+        }
+        else
+        {
+            final ProcessMonitor monitorGen = ProcessMonitor.launch(pbGen, false, test.generatorMemoryLimit(), -1);
+            final Process processGen = monitorGen.process;
+            test.feedInput(processGen);
+            final boolean timeouted = test.runProcess(processGen);
+            final ProcessUsage usageGen = monitorGen.finish();
+            run.generatorUsage.add(usageGen);
+            out.printf("\ttime: \t%.2fms\t%s%n", usageGen.wallNanos / 1000000.0d, usageGen.describe());
+
+            if (monitorGen.memoryExceeded)
+            {
+                out.println("Reference solution generation exceeded memory limit, skipping...");
+                out.println();
+                run.result = TestResult.skipped(test.name, Verdict.MEMORY_LIMIT, run.testStart, run.generatorUsage);
+                return;
+            }
+            if (timeouted)
+            {
+                out.println("Reference solution generation timeout, skipping...");
+                out.println();
+                run.result = TestResult.skipped(test.name, Verdict.TIMEOUT, run.testStart, run.generatorUsage);
+                return;
+            }
+
+            final Map<String, Path> artifacts = new HashMap<>();
+            artifacts.put(GeneratorCache.STDOUT, test.output);
+            artifacts.put(GeneratorCache.STDERR, test.error);
+
+            // move reference files from rundir to testdir
+            if (test.hasOutputFiles())
+            {
+                for (final Path outFile : test.outFiles)
+                {
+                    final Path fileName = outFile.getFileName();
+                    final Path reference = test.runDir.resolve(fileName).toAbsolutePath().normalize();
+
+                    if (Files.exists(reference))
+                    {
+                        final Path target = testFolder.resolve(test.name + "." + fileName);
+                        out.printf("\tMoving reference file \"%s\" from run directory to test folder as \"%s\"%n",
+                            reference.getFileName(),
+                            target.getFileName());
+
+                        Files.move(reference, target, StandardCopyOption.REPLACE_EXISTING);
+                        artifacts.put(GeneratorCache.OUT_FILE_PREFIX + fileName, target);
+                    }
+                }
+            }
+
+            if (cacheKey != null && processGen.exitValue() == 0)
+            {
+                generatorCache.store(cacheKey, artifacts);
+            }
+        }
+
+        out.println();
+    }
+
+    // stage 3: execute "main", stdout and stderr are compared while it runs
+    private static void executeMain(final TestRun run, final Path testFolder) throws Exception
+    {
+        final TestInfo test = run.test;
+        if (run.result != null)
+        {
+            return;
+        }
+
+        run.mainBuilder = test.prepareMain(testFolder, run.session.mainTemplates);
+        if (mainLock != null)
+        {
+            mainLock.acquire();
+        }
+        try
+        {
+            final ProcessMonitor monitor = ProcessMonitor.launch(run.mainBuilder, inProcess, test.memoryLimit, test.cpuLimitMillis);
+            final Process process = monitor.process;
+            if (test.descriptor.checkerCommand != null)
+            {
+                run.capturedOutput = Files.createTempFile("tr-" + test.name, ".out");
+                run.outComparator = StreamComparator.capture(process, process.getInputStream(), run.capturedOutput, "out", test.outputLimit);
+            }
+            else
+            {
+                run.outComparator = StreamComparator.start(process,
+                    process.getInputStream(),
+                    test.output,
+                    "out",
+                    test.descriptor.checker,
+                    test.outputLimit);
+            }
+            run.errComparator = StreamComparator.start(process, process.getErrorStream(), test.error, "err", null, test.outputLimit);
+            monitor.limitOutputFiles(test.outFiles, test.outputLimit);
+            test.feedInput(process);
+            run.timeouted = test.runProcess(process);
+            run.mainUsage = monitor.finish();
+            run.memoryExceeded = monitor.memoryExceeded;
+            run.cpuExceeded = monitor.cpuExceeded;
+            run.outputFilesExceeded = monitor.outputExceeded;
+            run.outComparator.await();
+            run.errComparator.await();
+            run.exitCode = process.exitValue();
+        }
+        finally
+        {
+            if (mainLock != null)
+            {
+                mainLock.release();
+            }
+        }
+    }
+
+    // stage 4: check results and print verdict
+    private static TestResult verify(final TestRun run, final Path testFolder) throws Exception
+    {
+        final TestInfo test = run.test;
+        final PrintStream out = run.out;
+        if (run.result != null)
+        {
+            return run.result;
+        }
+
+        // blame human for being SgTrUePaItD
+
+        final boolean outputExceeded = run.outComparator.limitExceeded || run.errComparator.limitExceeded || run.outputFilesExceeded;
+        boolean isCorrect = true;
+        if (run.memoryExceeded)
+        {
+            out.printf("Memory limit of %dKiB exceeded, peak: %dKiB%n%n", test.memoryLimit / 1024, run.mainUsage.peakRssKiB);
+            isCorrect = false;
+        }
+        else if (run.cpuExceeded)
+        {
+            out.printf("CPU time limit of %dms exceeded, cpu: %.2fms%n%n",
+                test.cpuLimitMillis,
+                (run.mainUsage.userNanos + run.mainUsage.systemNanos) / 1000000.0d);
+            isCorrect = false;
+        }
+        else if (outputExceeded)
+        {
+            final List<String> exceeded = new ArrayList<>();
+            if (run.outComparator.limitExceeded)
+            {
+                exceeded.add("out");
+            }
+            if (run.errComparator.limitExceeded)
+            {
+                exceeded.add("err");
+            }
+            if (run.outputFilesExceeded)
+            {
+                exceeded.add("output files");
+            }
+            out.printf("Output limit of %d bytes exceeded by %s%n%n", test.outputLimit, String.join(", ", exceeded));
+            isCorrect = false;
+        }
+        else if (run.outComparator.killed || run.errComparator.killed)
+        {
+            out.println("Killed after first output mismatch");
+            out.println();
+            isCorrect = false;
+        }
+        else
+        {
+            isCorrect &= checkExitCode(test, run.exitCode, out);
+        }
+        isCorrect &= run.outComparator.report(out);
+        run.outComparator.recordMismatch(test.mismatches);
+        if (run.capturedOutput != null && !run.timeouted && !run.memoryExceeded && !run.cpuExceeded && !outputExceeded)
+        {
+            isCorrect &= runExternalChecker(run, testFolder);
+        }
+        isCorrect &= run.errComparator.report(out);
+        run.errComparator.recordMismatch(test.mismatches);
+        isCorrect &= checkOutputFiles(test, testFolder, out);
+
+        if (!isCorrect && !run.memoryExceeded && test.memoryLimit > 0 && !inProcess && !MemoryLimit.isCgroup())
+        {
+            out.println("Memory limit is enforced by rlimit, failure might be caused by refused allocation");
+            out.println();
+        }
+
+        Verdict verdict = run.memoryExceeded ? Verdict.MEMORY_LIMIT : run.cpuExceeded ? Verdict.CPU_TIMEOUT :
+            outputExceeded ? Verdict.OUTPUT_LIMIT : run.timeouted ? Verdict.TIMEOUT : (isCorrect ? Verdict.OK : Verdict.ERROR);
+
+        // measure only correct solutions
+        BenchmarkResult benchmark = null;
+        if (benchmarkRuns > 0 && verdict == Verdict.OK)
+        {
+            if (mainLock != null)
+            {
+                mainLock.acquire();
+            }
+            try
+            {
+                benchmark = runBenchmark(test, run.mainBuilder, out);
+            }
+            finally
+            {
+                if (mainLock != null)
+                {
+                    mainLock.release();
+                }
+            }
+            if (benchmark == null)
+            {
+                verdict = Verdict.TIMEOUT;
+            }
+            else if (run.session.baseline.isRegression(test.name, benchmark, out))
+            {
+                verdict = Verdict.REGRESSED;
+            }
+        }
+
+        out.printf("%-8s\ttime: \t%.2fms\t%s%n%n%n", verdict, run.mainUsage.wallNanos / 1000000.0d, run.mainUsage.describe());
+
+        run.result = new TestResult(test.name, verdict, run.mainUsage, run.generatorUsage, System.nanoTime() - run.testStart);
+        run.result.benchmark = benchmark;
+        run.result.exitCode = run.timeouted || run.outComparator.killed || run.errComparator.killed || outputExceeded ? null : run.exitCode;
+        run.result.mismatches = test.mismatches;
+        return run.result;
+    }
+
+    private static boolean runExternalChecker(final TestRun run, final Path testFolder) throws Exception
+    {
+        final TestInfo test = run.test;
+        final PrintStream out = run.out;
+        final Path report = Files.createTempFile("tr-" + test.name, ".checker");
+        try
+        {
+            final ProcessMonitor monitor = ProcessMonitor.launch(test.prepareChecker(testFolder, run.capturedOutput, report), false, -1, -1);
+            final Process process = monitor.process;
+            process.getOutputStream().close();
+            final boolean timeouted = test.runProcess(process);
+            final ProcessUsage usage = monitor.finish();
+            run.generatorUsage.add(usage);
+
+            if (timeouted)
+            {
+                out.println("Checker timeout");
+                out.println();
+                return false;
+            }
+            if (process.exitValue() != 0)
+            {
+                out.printf("Checker rejected result out with exit code %d:%n%s%n%n",
+                    process.exitValue(),
+                    escapeInvisibles(new String(readWindow(report, 0, 1000))));
+                return false;
+            }
+            return true;
+        }
+        finally
+        {
+            Files.deleteIfExists(report);
+        }
+    }
+
+    // null if some run timeouted
+    private static BenchmarkResult runBenchmark(final TestInfo test, final ProcessBuilder pb, final PrintStream out) throws Exception
+    {
+        out.printf("Benchmark: %d warmup and %d measured runs%n", benchmarkWarmup, benchmarkRuns);
+
+        if (!inProcess)
+        {
+            pb.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+            pb.redirectError(ProcessBuilder.Redirect.DISCARD);
+        }
+
+        final long[] wall = new long[benchmarkRuns];
+        final long[] cpu = new long[benchmarkRuns];
+        for (int i = -benchmarkWarmup; i < benchmarkRuns; i++)
+        {
+            final ProcessMonitor monitor = ProcessMonitor.launch(pb, inProcess, test.memoryLimit, test.cpuLimitMillis);
+            final Process process = monitor.process;
+            if (inProcess)
+            {
+                discard(process.getInputStream());
+                discard(process.getErrorStream());
+            }
+            test.feedInput(process);
+            final boolean timeouted = test.runProcess(process);
+            final ProcessUsage usage = monitor.finish();
+
+            if (timeouted || monitor.cpuExceeded)
+            {
+                out.println("Benchmark run timeout, stopping...");
+                out.println();
+                return null;
+            }
+            if (i >= 0)
+            {
+                wall[i] = usage.wallNanos;
+                cpu[i] = usage.userNanos < 0 ? -1 : usage.userNanos + usage.systemNanos;
+            }
+        }
+
+        final BenchmarkResult result = new BenchmarkResult(wall, cpu);
+        out.printf("\twall: \t%s%n\tcpu: \t%s%n", BenchmarkResult.describe(wall), BenchmarkResult.describe(cpu));
+        return result;
+    }
+
+    private static void discard(final InputStream stream)
+    {
+        ioExecutor.submit(() -> {
+            try (stream)
+            {
+                stream.transferTo(OutputStream.nullOutputStream());
+            }
+            return null;
+        });
+    }
+
+    private static boolean checkOutputFiles(final TestInfo test, final Path testFolder, final PrintStream out) throws IOException
+    {
+        if (!test.hasOutputFiles())
+        {
+            return true;
+        }
+
+        boolean isCorrect = true;
+
+        for (final Path user : test.outFiles)
+        {
+            final String fileName = user.getFileName().toString();
+            final Path reference = testFolder.resolve(test.runDir.relativize(user));
+
+            if (debug)
+            {
+                System.err.println("DEBUG: comparing: " + user + " <> " + reference);
+            }
+
+            if (!Files.exists(user))
+            {
+                out.println("Missing user output file of name \"" + fileName + "\" at: " + user.toString());
+                out.println();
+
+                isCorrect = false;
+            }
+            else if (!Files.exists(reference))
+            {
+                out.println("Missing reference output file of name \"" + fileName + "\" at: " + reference.toString());
+                out.println();
+
+                isCorrect = false;
+            }
+            else
+            {
+                final long firstMismatchByte = Files.mismatch(user, reference);
+                if (firstMismatchByte != -1)
+                {
+                    test.mismatches.put(fileName, firstMismatchByte);
+                    out.println("Output file \"" + fileName + "\" does not match reference:");
+
+                    final long userLength = Files.size(user);
+                    final long[] line = locateLine(user, firstMismatchByte);
+                    if (lineDiff)
+                    {
+                        final long start = Math.max(line[1], firstMismatchByte - LineDiff.WINDOW_BYTES / 2);
+                        final byte[] userWindow = readWindow(user, start, LineDiff.WINDOW_BYTES);
+                        final byte[] referenceWindow = readWindow(reference, start, LineDiff.WINDOW_BYTES);
+                        LineDiff.report(out,
+                            fileName,
+                            start,
+                            firstMismatchByte,
+                            line[0],
+                            firstMismatchByte - line[1] + 1,
+                            referenceWindow,
+                            start + referenceWindow.length >= Files.size(reference),
+                            userWindow,
+                            start + userWindow.length >= userLength);
+                    }
+                    else
+                    {
+                        out.printf("Result %s:%n%s%n",
+                            fileName,
+                            userLength == 0 ? "<empty>" : escapeInvisibles(new String(readWindow(user, 0, 1000))));
+                        out.printf("Expected %s:%n%s%n", fileName, escapeInvisibles(new String(readWindow(reference, 0, 1000))));
+
+                        final long position = Math.max(0, firstMismatchByte - DUMP_AROUND_SIZE);
+                        final byte[] before = readWindow(user, position, (int) (firstMismatchByte - position));
+                        final byte[] after = readWindow(user, firstMismatchByte, DUMP_AROUND_SIZE + 1);
+                        printMismatch(out,
+                            fileName,
+                            firstMismatchByte,
+                            userLength,
+                            line[0],
+                            firstMismatchByte - line[1] + 1,
+                            before,
+                            before.length,
+                            after,
+                            after.length);
+                    }
+
+                    isCorrect = false;
+                }
+            }
+        }
+
+        return isCorrect;
+    }
+
+    private static boolean checkExitCode(final TestInfo test, final int processExitCode, final PrintStream out) throws IOException
+    {
+        if (test.hasExitCode())
+        {
+            final int exitCode = test.descriptor.exitCode;
+
+            if (exitCode != processExitCode)
+            {
+                out.printf("Result exit code: %d%nExpected exit code: %d%n%n", exitCode, processExitCode);
+                return false;
+            }
+        }
+        else if (processExitCode != 0)
+        {
+            out.println("Nonzero exit code: " + processExitCode);
+            out.println();
+            return false;
+        }
+        return true;
+    }
+
+    // after starts with first mismatching byte, before ends right in front of it
+    private static void printMismatch(final PrintStream out,
+        final String name,
+        final long mismatch,
+        final long length,
+        final long line,
+        final long column,
+        final byte[] before,
+        final int beforeLength,
+        final byte[] after,
+        final int afterLength)
+    {
+        if (length == 0)
+        {
+            out.println();
+        }
+        else if (mismatch == 0 && length == 1)
+        {
+            out.printf("Mismatch in only character of result %s:%n| %s |%n%n",
+                name,
+                escapeInvisibles(new String(after, 0, 1)));
+        }
+        else if (mismatch >= length)
+        {
+            out.printf("Mismatch after end (line %d, column %d) of result %s%n%n", line, column, name);
+        }
+        else
+        {
+            out.printf("Mismatch at %d (line %d, column %d) of result %s:%n%s %s <> %s <> %s %s%n%n",
+                mismatch,
+                line,
+                column,
+                name,
+                mismatch < 1 + DUMP_AROUND_SIZE ? "|" : "...",
+                escapeInvisibles(new String(before, 0, beforeLength)),
+                escapeInvisibles(new String(after, 0, 1)),
+                escapeInvisibles(new String(after, 1, afterLength - 1)),
+                mismatch + 1 + DUMP_AROUND_SIZE >= length ? "|" : "...");
+        }
+    }
+
+    // returns line number of given offset and offset where that line starts
+    private static long[] locateLine(final Path file, final long offset) throws IOException
+    {
+        long line = 1;
+        long lineStart = 0;
+        long position = 0;
+        final byte[] chunk = new byte[1 << 16];
+        try (var stream = Files.newInputStream(file))
+        {
+            int read;
+            while (position < offset && (read = stream.read(chunk, 0, (int) Math.min(chunk.length, offset - position))) != -1)
+            {
+                for (int i = 0; i < read; i++)
+                {
+                    if (chunk[i] == '\n')
+                    {
+                        line++;
+                        lineStart = position + i + 1;
+                    }
+                }
+                position += read;
+            }
+        }
+        return new long[] {line, lineStart};
+    }
+
+    private static byte[] readWindow(final Path file, final long position, final int size) throws IOException
+    {
+        final ByteBuffer buffer = ByteBuffer.allocate(size);
+        try (var fd = Files.newByteChannel(file, StandardOpenOption.READ))
+        {
+            fd.position(position);
+            while (buffer.hasRemaining() && fd.read(buffer) != -1)
+            {}
+        }
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    private static String escapeInvisibles(final String escape)
+    {
+        final int len = escape.length();
+        final StringBuilder sb = new StringBuilder(Math.max(1005 * len / 1000, len));
+        for (int i = 0; i < len; i++)
+        {
+            final char c = escape.charAt(i);
+            switch (c)
+            {
+                case '\b':
+                    sb.append('\\');
+                    sb.append('b');
+                    break;
+
+                case '\f':
+                    sb.append('\\');
+                    sb.append('f');
+                    break;
+
+                case '\n':
+                    sb.append('\\');
+                    sb.append('n');
+                    break;
+
+                case '\r':
+                    sb.append('\\');
+                    sb.append('r');
+                    break;
+
+                case '\t':
+                    sb.append('\\');
+                    sb.append('t');
+                    break;
+
+                default:
+                    if (c < ' ')
+                    {
+                        sb.append("\\0x");
+                        sb.append(Integer.toHexString(c));
+                    }
+                    else
+                    {
+                        sb.append(c);
+                    }
+                    break;
+            }
+        }
+        return sb.toString();
+    }
+
+    private static class StreamComparator implements Runnable
+    {
+        private static final int CHUNK_SIZE = 1 << 16;
+        private static final int HEAD_SIZE = 5000;
+        private static final long CLOSE_GRACE_MILLIS = 1000;
+
+        final Process process;
+        final InputStream source;
+        final Path expected;
+        final String streamName;
+        // built-in checker other than exact, or file result is only captured into for external checker
+        final Checker checker;
+        final Path capture;
+        // process is killed once it writes more, negative is unlimited
+        final long limit;
+        Future<?> task;
+
+        // bounded view of result stream
+        final byte[] head = new byte[HEAD_SIZE];
+        int headLength;
+        final byte[] before = new byte[DUMP_AROUND_SIZE];
+        int beforeLength;
+        final byte[] after = new byte[DUMP_AROUND_SIZE + 1];
+        int afterLength;
+        // result from first mismatch on, only for line diff
+        byte[] diffWindow;
+        int diffLength;
+
+        long length;
+        // line of first mismatch and offset where it starts
+        long line = 1;
+        long lineStart;
+        long expectedLength;
+        long mismatch = -1;
+        Mismatch checkerMismatch;
+        volatile boolean killed;
+        volatile boolean limitExceeded;
+
+        private StreamComparator(final Process process,
+            final InputStream source,
+            final Path expected,
+            final String streamName,
+            final Checker checker,
+            final Path capture,
+            final long limit)
+        {
+            this.process = process;
+            this.source = source;
+            this.expected = expected;
+            this.streamName = streamName;
+            this.checker = checker == Checker.EXACT ? null : checker;
+            this.capture = capture;
+            this.limit = limit;
+        }
+
+        private static StreamComparator start(final Process process,
+            final InputStream source,
+            final Path expected,
+            final String streamName,
+            final Checker checker,
+            final long limit)
+        {
+            final StreamComparator comparator = new StreamComparator(process, source, expected, streamName, checker, null, limit);
+            comparator.task = ioExecutor.submit(comparator);
+            return comparator;
+        }
+
+        private static StreamComparator capture(final Process process,
+            final InputStream source,
+            final Path file,
+            final String streamName,
+            final long limit)
+        {
+            final StreamComparator comparator = new StreamComparator(process, source, null, streamName, null, file, limit);
+            comparator.task = ioExecutor.submit(comparator);
+            return comparator;
+        }
+
+        @Override
+        public void run()
+        {
+            if (capture != null || (checker != null && expected != null))
+            {
+                runChecker();
+                return;
+            }
+
+            try (var expectedChannel = expected == null ? null : FileChannel.open(expected, StandardOpenOption.READ))
+            {
+                expectedLength = expectedChannel == null ? 0 : expectedChannel.size();
+
+                final byte[] chunk = new byte[CHUNK_SIZE];
+                final ByteBuffer expectedChunk = ByteBuffer.allocate(CHUNK_SIZE);
+                int read;
+                while ((read = source.read(chunk)) != -1)
+                {
+                    final int accepted = withinLimit(read);
+                    if (headLength < HEAD_SIZE)
+                    {
+                        final int toCopy = Math.min(accepted, HEAD_SIZE - headLength);
+                        System.arraycopy(chunk, 0, head, headLength, toCopy);
+                        headLength += toCopy;
+                    }
+
+                    if (mismatch == -1)
+                    {
+                        compareChunk(chunk, accepted, expectedChannel, expectedChunk);
+                    }
+                    else
+                    {
+                        captureAfter(chunk, 0, accepted);
+                    }
+                    length += accepted;
+                    if (accepted < read)
+                    {
+                        break;
+                    }
+                }
+            }
+            catch (final IOException e)
+            {
+                // stream closed by destroying process, keep what was read
+                if (debug)
+                {
+                    System.err.println("DEBUG: " + streamName + " stream closed: " + e.getMessage());
+                }
+            }
+
+            if (mismatch == -1 && length != expectedLength)
+            {
+                mismatch = length;
+            }
+        }
+
+        // result is pulled by checker through tap, which keeps its head and length
+        private void runChecker()
+        {
+            try (var tap = new Tap(capture == null ? null : Files.newOutputStream(capture)))
+            {
+                if (capture == null)
+                {
+                    try (var expectedStream = Files.newInputStream(expected))
+                    {
+                        checkerMismatch = checker.check(new ByteReader(tap), new ByteReader(expectedStream));
+                    }
+                    if (checkerMismatch != null)
+                    {
+                        mismatch = checkerMismatch.offset;
+                        line = checkerMismatch.line;
+                        lineStart = checkerMismatch.offset - checkerMismatch.column + 1;
+                        if (killOnMismatch)
+                        {
+                            killed = true;
+                            ProcessSupervisor.killTree(process);
+                        }
+                    }
+                }
+                tap.transferTo(OutputStream.nullOutputStream());
+            }
+            catch (final IOException e)
+            {
+                // stream closed by destroying process, keep what was read
+                if (debug)
+                {
+                    System.err.println("DEBUG: " + streamName + " stream closed: " + e.getMessage());
+                }
+            }
+        }
+
+        private class Tap extends InputStream
+        {
+            final OutputStream copy;
+
+            private Tap(final OutputStream copy)
+            {
+                this.copy = copy;
+            }
+
+            @Override
+            public int read() throws IOException
+            {
+                final byte[] single = new byte[1];
+                return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+            }
+
+            @Override
+            public int read(final byte[] b, final int off, final int len) throws IOException
+            {
+                final int read = source.read(b, off, len);
+                if (read > 0)
+                {
+                    final int accepted = withinLimit(read);
+                    if (headLength < HEAD_SIZE)
+                    {
+                        final int toCopy = Math.min(accepted, HEAD_SIZE - headLength);
+                        System.arraycopy(b, off, head, headLength, toCopy);
+                        headLength += toCopy;
+                    }
+                    if (copy != null)
+                    {
+                        copy.write(b, off, accepted);
+                    }
+                    length += accepted;
+                    // checker sees end of result at limit
+                    return accepted == 0 ? -1 : accepted;
+                }
+                return read;
+            }
+
+            @Override
+            public void close() throws IOException
+            {
+                if (copy != null)
+                {
+                    copy.close();
+                }
+            }
+        }
+
+        private void compareChunk(final byte[] chunk, final int read, final FileChannel expectedChannel, final ByteBuffer expectedChunk)
+            throws IOException
+        {
+            int expectedRead = 0;
+            if (expectedChannel != null)
+            {
+                expectedChunk.clear().limit(read);
+                while (expectedChunk.hasRemaining() && expectedChannel.read(expectedChunk) != -1)
+                {}
+                expectedRead = expectedChunk.position();
+            }
+
+            final int index = Arrays.mismatch(chunk, 0, read, expectedChunk.array(), 0, expectedRead);
+            if (index == -1)
+            {
+                captureBefore(chunk, read);
+                countLines(chunk, read);
+                return;
+            }
+
+            mismatch = length + index;
+            captureBefore(chunk, index);
+            countLines(chunk, index);
+            if (lineDiff)
+            {
+                diffWindow = new byte[LineDiff.WINDOW_BYTES];
+            }
+            captureAfter(chunk, index, read - index);
+
+            if (killOnMismatch)
+            {
+                killed = true;
+                ProcessSupervisor.killTree(process);
+            }
+        }
+
+        // part of read bytes within limit, process is killed once limit is crossed
+        private int withinLimit(final int read)
+        {
+            if (limit < 0 || length + read <= limit)
+            {
+                return read;
+            }
+            if (!limitExceeded)
+            {
+                limitExceeded = true;
+                ProcessSupervisor.killTree(process);
+            }
+            return (int) Math.max(0, limit - length);
+        }
+
+        private void captureBefore(final byte[] chunk, final int end)
+        {
+            if (end >= DUMP_AROUND_SIZE)
+            {
+                System.arraycopy(chunk, end - DUMP_AROUND_SIZE, before, 0, DUMP_AROUND_SIZE);
+                beforeLength = DUMP_AROUND_SIZE;
+            }
+            else
+            {
+                final int keep = Math.min(beforeLength, DUMP_AROUND_SIZE - end);
+                System.arraycopy(before, beforeLength - keep, before, 0, keep);
+                System.arraycopy(chunk, 0, before, keep, end);
+                beforeLength = keep + end;
+            }
+        }
+
+        private void captureAfter(final byte[] chunk, final int offset, final int len)
+        {
+            final int toCopy = Math.min(len, after.length - afterLength);
+            System.arraycopy(chunk, offset, after, afterLength, toCopy);
+            afterLength += toCopy;
+
+            if (diffWindow != null)
+            {
+                final int toDiff = Math.min(len, diffWindow.length - diffLength);
+                System.arraycopy(chunk, offset, diffWindow, diffLength, toDiff);
+                diffLength += toDiff;
+            }
+        }
+
+        private void countLines(final byte[] chunk, final int end)
+        {
+            for (int i = 0; i < end; i++)
+            {
+                if (chunk[i] == '\n')
+                {
+                    line++;
+                    lineStart = length + i + 1;
+                }
+            }
+        }
+
+        private void await() throws Exception
+        {
+            try
+            {
+                task.get(CLOSE_GRACE_MILLIS, TimeUnit.MILLISECONDS);
+            }
+            catch (final TimeoutException e)
+            {
+                // pipe kept open by someone else (eg. grandchild process)
+                source.close();
+                task.cancel(true);
+            }
+        }
+
+        private void recordMismatch(final Map<String, Long> mismatches)
+        {
+            if (capture == null && (mismatch != -1 || (expected == null && length > 0)))
+            {
+                mismatches.put(streamName, Math.max(mismatch, 0));
+            }
+        }
+
+        private boolean report(final PrintStream out) throws IOException
+        {
+            if (capture != null)
+            {
+                return true;
+            }
+            else if (expected == null)
+            {
+                if (length > 0)
+                {
+                    out.printf("Result %s should be empty:%n%s%n", streamName, new String(head, 0, headLength));
+                    return false;
+                }
+                return true;
+            }
+            else if (mismatch == -1)
+            {
+                return true;
+            }
+
+            if (checkerMismatch != null)
+            {
+                out.printf("Result %s:%n%s%n",
+                    streamName,
+                    length == 0 ? "<empty>" : escapeInvisibles(new String(head, 0, Math.min(1000, headLength))));
+                out.printf("Expected %s:%n%s%n", streamName, escapeInvisibles(new String(readWindow(expected, 0, 1000))));
+                out.printf("Mismatch at %d (line %d, column %d) of result %s, %s%n%n",
+                    mismatch,
+                    line,
+                    mismatch - lineStart + 1,
+                    streamName,
+                    checkerMismatch.message);
+                return false;
+            }
+
+            if (lineDiff)
+            {
+                // result equals expected up to mismatch, so start of its line is taken from expected
+                final long start = Math.max(lineStart, mismatch - LineDiff.WINDOW_BYTES / 2);
+                final byte[] expectedWindow = readWindow(expected, start, LineDiff.WINDOW_BYTES);
+                final int prefix = (int) (mismatch - start);
+                final byte[] resultWindow = Arrays.copyOf(expectedWindow, prefix + diffLength);
+                if (diffWindow != null)
+                {
+                    System.arraycopy(diffWindow, 0, resultWindow, prefix, diffLength);
+                }
+                LineDiff.report(out,
+                    streamName,
+                    start,
+                    mismatch,
+                    line,
+                    mismatch - lineStart + 1,
+                    expectedWindow,
+                    start + expectedWindow.length >= expectedLength,
+                    resultWindow,
+                    mismatch + diffLength >= length);
+                return false;
+            }
+
+            out.printf("Result %s:%n%s%n",
+                streamName,
+                length == 0 ? "<empty>" : escapeInvisibles(new String(head, 0, Math.min(1000, headLength))));
+            out.printf("Expected %s:%n%s%n", streamName, escapeInvisibles(new String(readWindow(expected, 0, 1000))));
+            printMismatch(out, streamName, mismatch, length, line, mismatch - lineStart + 1, before, beforeLength, after, afterLength);
+            return false;
+        }
+    }
+
+    // Myers diff of lines, windows start at the same offset of both outputs so memory stays bounded
+    private static class LineDiff
+    {
+        static final int WINDOW_BYTES = 1 << 20;
+        private static final int MAX_LINES = 4096;
+        private static final int MAX_EDITS = 1024;
+        private static final int CONTEXT = 2;
+        private static final int LINE_DUMP = 200;
+        private static final int HUNK_DUMP = 40;
+
+        private static final byte EQUAL = 0;
+        private static final byte DELETE = 1;
+        private static final byte INSERT = 2;
+
+        final Lines expected;
+        final Lines result;
+
+        private LineDiff(final Lines expected, final Lines result)
+        {
+            this.expected = expected;
+            this.result = result;
+        }
+
+        // both windows start at given offset, which is in line of first mismatch
+        private static void report(final PrintStream out,
+            final String name,
+            final long start,
+            final long mismatch,
+            final long line,
+            final long column,
+            final byte[] expectedWindow,
+            final boolean expectedComplete,
+            final byte[] resultWindow,
+            final boolean resultComplete)
+        {
+            out.printf("Mismatch at %d (line %d, column %d) of result %s, line diff (- expected, + result):%n", mismatch, line, column, name);
+
+            Lines expectedLines = Lines.split(expectedWindow, expectedComplete);
+            Lines resultLines = Lines.split(resultWindow, resultComplete);
+            byte[] script = new LineDiff(expectedLines, resultLines).diff();
+            // too many differences, shrink window until edit script fits into bounded trace
+            while (script == null)
+            {
+                expectedLines = expectedLines.truncate(expectedLines.count / 2);
+                resultLines = resultLines.truncate(resultLines.count / 2);
+                script = new LineDiff(expectedLines, resultLines).diff();
+            }
+            new LineDiff(expectedLines, resultLines).print(out, script, start, line);
+            out.println();
+        }
+
+        // edit script from start to end of both windows, null if it needs more than MAX_EDITS edits
+        private byte[] diff()
+        {
+            final int n = expected.count;
+            final int m = result.count;
+            final int offset = MAX_EDITS + 1;
+            final int[] v = new int[2 * MAX_EDITS + 3];
+            final List<int[]> trace = new ArrayList<>();
+            for (int d = 0; d <= Math.min(n + m, MAX_EDITS); d++)
+            {
+                for (int k = -d; k <= d; k += 2)
+                {
+                    int x = k == -d || (k != d && v[offset + k - 1] < v[offset + k + 1]) ? v[offset + k + 1] : v[offset + k - 1] + 1;
+                    int y = x - k;
+                    while (x < n && y < m && expected.equals(x, result, y))
+                    {
+                        x++;
+                        y++;
+                    }
+                    v[offset + k] = x;
+                    if (x >= n && y >= m)
+                    {
+                        trace.add(Arrays.copyOfRange(v, offset - d, offset + d + 1));
+                        return backtrack(trace);
+                    }
+                }
+                trace.add(Arrays.copyOfRange(v, offset - d, offset + d + 1));
+            }
+            return null;
+        }
+
+        private byte[] backtrack(final List<int[]> trace)
+        {
+            int x = expected.count;
+            int y = result.count;
+            final ByteArrayOutputStream reversed = new ByteArrayOutputStream();
+            for (int d = trace.size() - 1; d > 0; d--)
+            {
+                final int[] previous = trace.get(d - 1);
+                final int k = x - y;
+                final boolean down = k == -d || (k != d && previous[k - 1 + d - 1] < previous[k + 1 + d - 1]);
+                final int previousK = down ? k + 1 : k - 1;
+                final int previousX = previous[previousK + d - 1];
+                final int previousY = previousX - previousK;
+                while (x > previousX && y > previousY)
+                {
+                    reversed.write(EQUAL);
+                    x--;
+                    y--;
+                }
+                reversed.write(down ? INSERT : DELETE);
+                if (down)
+                {
+                    y--;
+                }
+                else
+                {
+                    x--;
+                }
+            }
+            while (x > 0 && y > 0)
+            {
+                reversed.write(EQUAL);
+                x--;
+                y--;
+            }
+
+            final byte[] script = reversed.toByteArray();
+            for (int i = 0, j = script.length - 1; i < j; i++, j--)
+            {
+                final byte swap = script[i];
+                script[i] = script[j];
+                script[j] = swap;
+            }
+            return script;
+        }
+
+        // prints unified hunks with absolute line numbers, hunks reaching end of truncated window are unreliable
+        private void print(final PrintStream out, final byte[] script, final long start, final long firstLine)
+        {
+            int printed = 0;
+            int i = 0;
+            // line index in expected and result before script[i]
+            int x = 0;
+            int y = 0;
+            while (i < script.length)
+            {
+                if (script[i] == EQUAL)
+                {
+                    i++;
+                    x++;
+                    y++;
+                    continue;
+                }
+
+                // find end of hunk, changes closer than two contexts are merged
+                int end = i;
+                int endX = x;
+                int endY = y;
+                int equalRun = 0;
+                int scanX = x;
+                int scanY = y;
+                for (int j = i; j < script.length && equalRun <= 2 * CONTEXT; j++)
+                {
+                    if (script[j] == EQUAL)
+                    {
+                        equalRun++;
+                        scanX++;
+                        scanY++;
+                    }
+                    else
+                    {
+                        equalRun = 0;
+                        scanX += script[j] == DELETE ? 1 : 0;
+                        scanY += script[j] == INSERT ? 1 : 0;
+                        end = j + 1;
+                        endX = scanX;
+                        endY = scanY;
+                    }
+                }
+
+                final boolean unreliable = (!expected.complete && endX >= expected.count) || (!result.complete && endY >= result.count);
+                if (unreliable && printed > 0)
+                {
+                    out.printf("... line diff window ends at line %d of result%n", firstLine + y);
+                    return;
+                }
+                if (printed == diffHunks)
+                {
+                    out.println("... more differences follow");
+                    return;
+                }
+
+                final int context = Math.min(CONTEXT, Math.min(x, y));
+                final int trailing = Math.min(CONTEXT, Math.min(expected.count - endX, result.count - endY));
+                out.printf("@@ -%d,%d +%d,%d @@ byte %d%n",
+                    firstLine + x - context,
+                    endX - x + context + trailing,
+                    firstLine + y - context,
+                    endY - y + context + trailing,
+                    start + result.byteOffset(y - context));
+                for (int c = context; c > 0; c--)
+                {
+                    printLine(out, ' ', result, y - c);
+                }
+                for (int j = i; j < end; j++)
+                {
+                    if (j - i == HUNK_DUMP)
+                    {
+                        out.printf("... %d more lines of hunk%n", end - j);
+                        x = endX;
+                        y = endY;
+                        break;
+                    }
+                    switch (script[j])
+                    {
+                        case EQUAL ->
+                        {
+                            printLine(out, ' ', result, y++);
+                            x++;
+                        }
+                        case DELETE -> printLine(out, '-', expected, x++);
+                        default -> printLine(out, '+', result, y++);
+                    }
+                }
+                for (int c = 0; c < trailing; c++)
+                {
+                    printLine(out, ' ', result, y + c);
+                }
+                printed++;
+                i = end;
+                if (unreliable)
+                {
+                    out.printf("... line diff window ends at line %d of result%n", firstLine + y);
+                    return;
+                }
+            }
+        }
+
+        private static void printLine(final PrintStream out, final char prefix, final Lines lines, final int index)
+        {
+            final int start = lines.starts[index];
+            int length = lines.starts[index + 1] - start;
+            final boolean newline = length > 0 && lines.data[start + length - 1] == '\n';
+            if (newline)
+            {
+                length--;
+            }
+            out.printf("%c%s%s%s%n",
+                prefix,
+                escapeInvisibles(new String(lines.data, start, Math.min(length, LINE_DUMP))),
+                length > LINE_DUMP ? " ..." : "",
+                newline ? "" : " <no newline>");
+        }
+
+        // lines of window including their line feeds, partial last line of truncated window is dropped
+        private static class Lines
+        {
+            final byte[] data;
+            final int[] starts;
+            final int[] hashes;
+            final int count;
+            final boolean complete;
+
+            private Lines(final byte[] data, final int[] starts, final int[] hashes, final int count, final boolean complete)
+            {
+                this.data = data;
+                this.starts = starts;
+                this.hashes = hashes;
+                this.count = count;
+                this.complete = complete;
+            }
+
+            private static Lines split(final byte[] data, final boolean complete)
+            {
+                final int[] starts = new int[MAX_LINES + 1];
+                final int[] hashes = new int[MAX_LINES];
+                int count = 0;
+                int start = 0;
+                int hash = 1;
+                for (int i = 0; i < data.length && count < MAX_LINES; i++)
+                {
+                    hash = 31 * hash + data[i];
+                    if (data[i] == '\n')
+                    {
+                        hashes[count] = hash;
+                        starts[++count] = i + 1;
+                        start = i + 1;
+                        hash = 1;
+                    }
+                }
+                if (start < data.length && count < MAX_LINES && (complete || count == 0))
+                {
+                    // unterminated last line, or single line longer than window
+                    hashes[count] = hash;
+                    starts[++count] = data.length;
+                    start = data.length;
+                }
+                return new Lines(data, starts, hashes, count, complete && start == data.length);
+            }
+
+            private Lines truncate(final int newCount)
+            {
+                return new Lines(data, starts, hashes, Math.min(count, Math.max(1, newCount)), complete && newCount >= count);
+            }
+
+            private boolean equals(final int index, final Lines other, final int otherIndex)
+            {
+                return hashes[index] == other.hashes[otherIndex] && Arrays.equals(data,
+                    starts[index],
+                    starts[index + 1],
+                    other.data,
+                    other.starts[otherIndex],
+                    other.starts[otherIndex + 1]);
+            }
+
+            private long byteOffset(final int index)
+            {
+                return starts[Math.min(index, count)];
+            }
+        }
+    }
+
+    // compares result with expected output while it is produced, external checker is not a Checker (see TestInfo.prepareChecker)
+    private interface Checker
+    {
+        Checker EXACT = new ExactChecker();
+        Checker TRAILING = new TrailingWhitespaceChecker();
+        Checker TOKENS = new TokenChecker();
+
+        // null if result is accepted, otherwise description of first difference
+        Mismatch check(ByteReader result, ByteReader expected) throws IOException;
+
+        // null if spec does not name built-in checker
+        private static Checker parse(final String spec)
+        {
+            final String[] parts = spec.strip().split("\\s+");
+            if (parts.length > 1 && !parts[0].equals("numeric") || parts.length > 3)
+            {
+                return null;
+            }
+            return switch (parts[0])
+            {
+                case "exact" -> EXACT;
+                case "trailing" -> TRAILING;
+                case "tokens" -> TOKENS;
+                case "numeric" ->
+                {
+                    final double absolute = parts.length > 1 ? Double.parseDouble(parts[1]) : NumericChecker.DEFAULT_EPSILON;
+                    final double relative = parts.length > 2 ? Double.parseDouble(parts[2]) : absolute;
+                    if (!(absolute >= 0) || !(relative >= 0))
+                    {
+                        throw new NumberFormatException("negative epsilon: " + spec);
+                    }
+                    yield new NumericChecker(absolute, relative);
+                }
+                default -> null;
+            };
+        }
+
+        private static String describe(final int b)
+        {
+            return b == -1 ? "end of output" : "\"" + escapeInvisibles(Character.toString((char) b)) + "\"";
+        }
+
+        private static boolean isWhitespace(final int b)
+        {
+            return b == ' ' || b == '\n' || b == '\t' || b == '\r' || b == '\f' || b == 0x0b;
+        }
+    }
+
+    private static class Mismatch
+    {
+        final long offset;
+        final long line;
+        final long column;
+        final String message;
+
+        private Mismatch(final long offset, final long line, final long column, final String message)
+        {
+            this.offset = offset;
+            this.line = line;
+            this.column = column;
+            this.message = message;
+        }
+
+        // at next byte of given reader
+        private static Mismatch at(final ByteReader reader, final String message)
+        {
+            return new Mismatch(reader.position(), reader.line, reader.position() - reader.lineStart + 1, message);
+        }
+    }
+
+    // buffered reader of output, keeps position and line of next byte
+    private static class ByteReader
+    {
+        private static final int BUFFER_SIZE = 1 << 16;
+
+        final InputStream stream;
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        int index;
+        int limit;
+        // bytes before start of buffer
+        long consumed;
+        long line = 1;
+        long lineStart;
+
+        private ByteReader(final InputStream stream)
+        {
+            this.stream = stream;
+        }
+
+        private int peek() throws IOException
+        {
+            if (index == limit && !fill())
+            {
+                return -1;
+            }
+            return buffer[index] & 0xff;
+        }
+
+        private int read() throws IOException
+        {
+            final int b = peek();
+            if (b != -1)
+            {
+                index++;
+                if (b == '\n')
+                {
+                    line++;
+                    lineStart = position();
+                }
+            }
+            return b;
+        }
+
+        private long position()
+        {
+            return consumed + index;
+        }
+
+        private boolean fill() throws IOException
+        {
+            consumed += limit;
+            index = 0;
+            limit = 0;
+            int read;
+            while ((read = stream.read(buffer)) == 0)
+            {}
+            if (read < 0)
+            {
+                return false;
+            }
+            limit = read;
+            return true;
+        }
+    }
+
+    private static class ExactChecker implements Checker
+    {
+        @Override
+        public Mismatch check(final ByteReader result, final ByteReader expected) throws IOException
+        {
+            int r;
+            int e;
+            while ((r = result.peek()) == (e = expected.peek()))
+            {
+                if (r == -1)
+                {
+                    return null;
+                }
+                result.read();
+                expected.read();
+            }
+            return Mismatch.at(result, "expected " + Checker.describe(e) + ", found " + Checker.describe(r));
+        }
+    }
+
+    // spaces, tabs and carriage returns at end of line and empty lines at end of output are ignored
+    private static class TrailingWhitespaceChecker implements Checker
+    {
+        @Override
+        public Mismatch check(final ByteReader result, final ByteReader expected) throws IOException
+        {
+            while (true)
+            {
+                final int r = result.peek();
+                final int e = expected.peek();
+                if (r == e)
+                {
+                    if (r == -1)
+                    {
+                        return null;
+                    }
+                    result.read();
+                    expected.read();
+                    continue;
+                }
+
+                // outputs diverged, which is fine only if rest of both lines is blank
+                final Mismatch mismatch = Mismatch.at(result, "expected " + Checker.describe(e) + ", found " + Checker.describe(r));
+                skipBlank(result);
+                skipBlank(expected);
+                final int lineEndR = result.peek();
+                final int lineEndE = expected.peek();
+                if (lineEndR == lineEndE && lineEndR == '\n')
+                {
+                    continue;
+                }
+                if ((lineEndR == -1 || lineEndR == '\n') && (lineEndE == -1 || lineEndE == '\n'))
+                {
+                    skipWhitespace(result);
+                    skipWhitespace(expected);
+                    if (result.peek() == -1 && expected.peek() == -1)
+                    {
+                        return null;
+                    }
+                }
+                return mismatch;
+            }
+        }
+
+        private static void skipBlank(final ByteReader reader) throws IOException
+        {
+            int b;
+            while ((b = reader.peek()) == ' ' || b == '\t' || b == '\r')
+            {
+                reader.read();
+            }
+        }
+
+        private static void skipWhitespace(final ByteReader reader) throws IOException
+        {
+            while (Checker.isWhitespace(reader.peek()))
+            {
+                reader.read();
+            }
+        }
+    }
+
+    // tokens separated by any amount of whitespace, tokens longer than kept prefix are compared without being kept
+    private static class TokenChecker implements Checker
+    {
+        // prefix shown in mismatch message
+        private static final int TOKEN_DUMP = 64;
+
+        @Override
+        public Mismatch check(final ByteReader result, final ByteReader expected) throws IOException
+        {
+            final byte[] resultToken = new byte[tokenPrefix()];
+            final byte[] expectedToken = new byte[tokenPrefix()];
+            while (true)
+            {
+                TrailingWhitespaceChecker.skipWhitespace(result);
+                TrailingWhitespaceChecker.skipWhitespace(expected);
+                final long offset = result.position();
+                final long line = result.line;
+                final long column = offset - result.lineStart + 1;
+                int resultLength = 0;
+                int expectedLength = 0;
+                boolean equal = true;
+                while (true)
+                {
+                    final int r = Checker.isWhitespace(result.peek()) ? -1 : result.read();
+                    final int e = Checker.isWhitespace(expected.peek()) ? -1 : expected.read();
+                    if (r == -1 && e == -1)
+                    {
+                        break;
+                    }
+                    equal &= r == e;
+                    if (r != -1 && resultLength++ < resultToken.length)
+                    {
+                        resultToken[resultLength - 1] = (byte) r;
+                    }
+                    if (e != -1 && expectedLength++ < expectedToken.length)
+                    {
+                        expectedToken[expectedLength - 1] = (byte) e;
+                    }
+                }
+
+                if (resultLength == 0 && expectedLength == 0)
+                {
+                    return null;
+                }
+                if (!equal && !matches(resultToken, resultLength, expectedToken, expectedLength))
+                {
+                    return new Mismatch(offset,
+                        line,
+                        column,
+                        "expected " + describe(expectedToken, expectedLength) + ", found " + describe(resultToken, resultLength));
+                }
+            }
+        }
+
+        // bytes kept of each token for matches
+        int tokenPrefix()
+        {
+            return TOKEN_DUMP;
+        }
+
+        // tokens which are not byte equal, length may exceed kept prefix
+        boolean matches(final byte[] result, final int resultLength, final byte[] expected, final int expectedLength)
+        {
+            return false;
+        }
+
+        private static String describe(final byte[] token, final int length)
+        {
+            if (length == 0)
+            {
+                return "end of output";
+            }
+            return "\"" + escapeInvisibles(new String(token, 0, Math.min(length, TOKEN_DUMP))) + (length > TOKEN_DUMP ? "...\"" : "\"");
+        }
+    }
+
+    // numbers are equal if absolute or relative difference is within epsilon, other tokens must be equal
+    private static class NumericChecker extends TokenChecker
+    {
+        private static final double DEFAULT_EPSILON = 1e-6;
+        // fits any double printed in fixed notation (up to 324 zeros after point and 17 significant digits)
+        private static final int NUMBER_LENGTH = 1024;
+
+        final double absolute;
+        final double relative;
+
+        private NumericChecker(final double absolute, final double relative)
+        {
+            this.absolute = absolute;
+            this.relative = relative;
+        }
+
+        @Override
+        int tokenPrefix()
+        {
+            return NUMBER_LENGTH;
+        }
+
+        @Override
+        boolean matches(final byte[] result, final int resultLength, final byte[] expected, final int expectedLength)
+        {
+            final double r = parse(result, resultLength);
+            final double e = parse(expected, expectedLength);
+            final double difference = Math.abs(r - e);
+            return difference <= absolute || difference <= relative * Math.abs(e);
+        }
+
+        // decimal number without allocation, precise enough for epsilon comparison, NaN if token is not a number
+        private static double parse(final byte[] token, final int length)
+        {
+            if (length == 0 || length > token.length)
+            {
+                return Double.NaN;
+            }
+
+            int i = 0;
+            final boolean negative = token[0] == '-';
+            if (token[0] == '-' || token[0] == '+')
+            {
+                i++;
+            }
+            long mantissa = 0;
+            int exponent = 0;
+            int digits = 0;
+            boolean point = false;
+            for (; i < length; i++)
+            {
+                final int b = token[i];
+                if (b >= '0' && b <= '9')
+                {
+                    digits++;
+                    if (mantissa < 100000000000000000L)
+                    {
+                        mantissa = mantissa * 10 + b - '0';
+                        exponent -= point ? 1 : 0;
+                    }
+                    else
+                    {
+                        exponent += point ? 0 : 1;
+                    }
+                }
+                else if (b == '.' && !point)
+                {
+                    point = true;
+                }
+                else
+                {
+                    break;
+                }
+            }
+            if (digits == 0)
+            {
+                return Double.NaN;
+            }
+
+            if (i < length && (token[i] == 'e' || token[i] == 'E'))
+            {
+                i++;
+                final boolean negativeExponent = i < length && token[i] == '-';
+                if (i < length && (token[i] == '-' || token[i] == '+'))
+                {
+                    i++;
+                }
+                int value = 0;
+                int exponentDigits = 0;
+                for (; i < length && token[i] >= '0' && token[i] <= '9'; i++)
+                {
+                    value = Math.min(100000, value * 10 + token[i] - '0');
+                    exponentDigits++;
+                }
+                if (exponentDigits == 0)
+                {
+                    return Double.NaN;
+                }
+                exponent += negativeExponent ? -value : value;
+            }
+            if (i != length)
+            {
+                return Double.NaN;
+            }
+
+            final double value = exponent < 0 ? mantissa / Math.pow(10, -exponent) : mantissa * Math.pow(10, exponent);
+            return negative ? -value : value;
+        }
+    }
+
+    @SuppressWarnings("removal")
+    private static class InProcessProcess extends Process
+    {
+        // interrupted threads get this long to finish before they are abandoned
+        private static final long INTERRUPT_GRACE_MILLIS = 100;
+        private static volatile boolean installed = false;
+        private static volatile boolean abandoned = false;
+
+        final Isolate isolate;
+        final InputStream stdin;
+        // write end of stdin, unless stdin is redirected from file
+        final OutputStream stdinSink;
+        final OutputStream stdout;
+        final OutputStream stderr;
+        final InputStream resultOut;
+        final InputStream resultErr;
+        final CountDownLatch exited = new CountDownLatch(1);
+        final Map<Long, long[]> threadCpu = new ConcurrentHashMap<>();
+        volatile int exitCode;
+        volatile boolean destroyed;
+
+        private InProcessProcess(final File input) throws IOException
+        {
+            final Pipe outPipe = Pipe.open();
+            final Pipe errPipe = Pipe.open();
+
+            this.isolate = new Isolate(this);
+            if (input == null)
+            {
+                final Pipe inPipe = Pipe.open();
+                this.stdin = new BufferedInputStream(Channels.newInputStream(inPipe.source()));
+                this.stdinSink = Channels.newOutputStream(inPipe.sink());
+            }
+            else
+            {
+                this.stdin = new BufferedInputStream(new FileInputStream(input));
+                this.stdinSink = OutputStream.nullOutputStream();
+            }
+            this.stdout = new BufferedOutputStream(Channels.newOutputStream(outPipe.sink()));
+            this.stderr = new BufferedOutputStream(Channels.newOutputStream(errPipe.sink()));
+            this.resultOut = Channels.newInputStream(outPipe.source());
+            this.resultErr = Channels.newInputStream(errPipe.source());
+        }
+
+        // command of given builder is [classpath, main class, arguments...], environment and directory are not applicable
+        private static InProcessProcess start(final ProcessBuilder pb) throws IOException
+        {
+            final List<String> command = pb.command();
+            final InProcessProcess process = new InProcessProcess(pb.redirectInput().file());
+
+            final String[] classpathEntries = command.get(0).split(File.pathSeparator);
+            final URL[] classpath = new URL[classpathEntries.length];
+            for (int i = 0; i < classpathEntries.length; i++)
+            {
+                classpath[i] = Path.of(classpathEntries[i]).toAbsolutePath().toUri().toURL();
+            }
+            final String mainClass = command.get(1);
+            final String[] args = command.subList(2, command.size()).toArray(String[]::new);
+
+            final Thread main = new Thread(process.isolate, () -> process.runMain(classpath, mainClass, args), "main");
+            main.start();
+            return process;
+        }
+
+        // false if System.exit can not be trapped, as security manager is disallowed (JDK 18+ by default) or removed (JDK 24+)
+        private static synchronized boolean install()
+        {
+            if (installed)
+            {
+                return true;
+            }
+            try
+            {
+                System.setSecurityManager(new ExitTrap());
+            }
+            catch (final UnsupportedOperationException | SecurityException e)
+            {
+                return false;
+            }
+            installed = true;
+
+            System.setIn(new DispatchingInputStream(System.in));
+            // tested program output is flushed on exit, runner output is flushed immediately
+            System.setOut(new PrintStream(new DispatchingOutputStream(System.out, false), false));
+            System.setErr(new PrintStream(new DispatchingOutputStream(System.err, true), false));
+            return true;
+        }
+
+        private static InProcessProcess current()
+        {
+            for (ThreadGroup group = Thread.currentThread().getThreadGroup(); group != null; group = group.getParent())
+            {
+                if (group instanceof Isolate isolate)
+                {
+                    return isolate.process;
+                }
+            }
+            return null;
+        }
+
+        private void runMain(final URL[] classpath, final String mainClass, final String[] args)
+        {
+            try (var loader = new URLClassLoader(classpath, ClassLoader.getPlatformClassLoader()))
+            {
+                Thread.currentThread().setContextClassLoader(loader);
+
+                final Method main;
+                try
+                {
+                    main = Class.forName(mainClass, false, loader).getMethod("main", String[].class);
+                }
+                catch (final ReflectiveOperationException | LinkageError e)
+                {
+                    new PrintStream(stderr, true).printf("Error: Could not find or load main class %s%nCaused by: %s%n", mainClass, e);
+                    exit(1);
+                    return;
+                }
+
+                main.invoke(null, (Object) args);
+                awaitThreads();
+                exit(0);
+            }
+            catch (final InvocationTargetException e)
+            {
+                handleThrowable(Thread.currentThread(), e.getCause());
+                awaitThreads();
+                exit(1);
+            }
+            catch (final Throwable e)
+            {
+                handleThrowable(Thread.currentThread(), e);
+                exit(1);
+            }
+        }
+
+        private void handleThrowable(final Thread thread, final Throwable throwable)
+        {
+            // failures caused by interrupt of destroyed test are not its output
+            if (destroyed)
+            {
+                return;
+            }
+            for (Throwable cause = throwable; cause != null; cause = cause.getCause())
+            {
+                if (cause instanceof ExitException exit)
+                {
+                    exit(exit.status);
+                    return;
+                }
+            }
+
+            final PrintStream err = new PrintStream(stderr, true);
+            err.print("Exception in thread \"" + thread.getName() + "\" ");
+            throwable.printStackTrace(err);
+        }
+
+        // same as JVM, wait for every non-daemon thread of program
+        private void awaitThreads()
+        {
+            final Thread self = Thread.currentThread();
+            boolean waited = true;
+            while (waited && exited.getCount() > 0)
+            {
+                waited = false;
+                final Thread[] threads = new Thread[isolate.activeCount() + 1];
+                final int count = isolate.enumerate(threads);
+                for (int i = 0; i < count; i++)
+                {
+                    if (threads[i] != self && !threads[i].isDaemon() && threads[i].isAlive())
+                    {
+                        try
+                        {
+                            threads[i].join();
+                        }
+                        catch (final InterruptedException e)
+                        {
+                            return;
+                        }
+                        waited = true;
+                    }
+                }
+            }
+        }
+
+        private void exit(final int status)
+        {
+            synchronized (this)
+            {
+                if (exited.getCount() == 0)
+                {
+                    return;
+                }
+                // main finishing while destroyed threads are awaited does not count
+                exitCode = destroyed ? 143 : status;
+                sampleCpu();
+                closeQuietly(stdout);
+                closeQuietly(stderr);
+                closeQuietly(stdin);
+                exited.countDown();
+            }
+            isolate.interrupt();
+        }
+
+        // cpu time of finished threads is lost, so keep last known value of every thread
+        private void sampleCpu()
+        {
+            final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+            final Thread[] threads = new Thread[isolate.activeCount() + 1];
+            final int count = isolate.enumerate(threads);
+            for (int i = 0; i < count; i++)
+            {
+                final long id = threads[i].getId();
+                final long cpu = threadBean.getThreadCpuTime(id);
+                final long user = threadBean.getThreadUserTime(id);
+                if (cpu != -1 && user != -1)
+                {
+                    threadCpu.put(id, new long[] {user, cpu});
+                }
+            }
+        }
+
+        private long[] cpuTimes()
+        {
+            final long[] total = new long[2];
+            for (final long[] cpu : threadCpu.values())
+            {
+                total[0] += cpu[0];
+                total[1] += cpu[1];
+            }
+            return total;
+        }
+
+        private static void closeQuietly(final Closeable closeable)
+        {
+            try
+            {
+                closeable.close();
+            }
+            catch (final IOException e)
+            {}
+        }
+
+        @Override
+        public OutputStream getOutputStream()
+        {
+            return stdinSink;
+        }
+
+        @Override
+        public InputStream getInputStream()
+        {
+            return resultOut;
+        }
+
+        @Override
+        public InputStream getErrorStream()
+        {
+            return resultErr;
+        }
+
+        @Override
+        public int waitFor() throws InterruptedException
+        {
+            exited.await();
+            return exitCode;
+        }
+
+        @Override
+        public boolean waitFor(final long timeout, final TimeUnit unit) throws InterruptedException
+        {
+            return exited.await(timeout, unit);
+        }
+
+        @Override
+        public int exitValue()
+        {
+            if (exited.getCount() > 0)
+            {
+                throw new IllegalThreadStateException("in-process program has not exited");
+            }
+            return exitCode;
+        }
+
+        @Override
+        public boolean isAlive()
+        {
+            return exited.getCount() > 0;
+        }
+
+        @Override
+        public void destroy()
+        {
+            destroyed = true;
+            isolate.interrupt();
+
+            final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(INTERRUPT_GRACE_MILLIS);
+            final Thread[] threads = new Thread[isolate.activeCount() + 1];
+            final int count = isolate.enumerate(threads);
+            for (int i = 0; i < count; i++)
+            {
+                final long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (threads[i] == Thread.currentThread() || remainingMillis <= 0)
+                {
+                    continue;
+                }
+                try
+                {
+                    threads[i].join(remainingMillis);
+                }
+                catch (final InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            for (int i = 0; i < count; i++)
+            {
+                if (threads[i] != Thread.currentThread() && threads[i].isAlive())
+                {
+                    // threads ignoring interrupt can not be stopped, just leave them
+                    abandoned = true;
+                }
+            }
+            // runner checks abandoned threads once test is over
+            exit(143); // same as SIGTERM
+        }
+
+        @Override
+        public Process destroyForcibly()
+        {
+            destroy();
+            return this;
+        }
+
+        private static class Isolate extends ThreadGroup
+        {
+            final InProcessProcess process;
+
+            Isolate(final InProcessProcess process)
+            {
+                super("TestRunner-inprocess");
+                this.process = process;
+                setDaemon(false);
+            }
+
+            @Override
+            public void uncaughtException(final Thread thread, final Throwable throwable)
+            {
+                process.handleThrowable(thread, throwable);
+            }
+        }
+
+        private static class ExitException extends SecurityException
+        {
+            private static final long serialVersionUID = 1L;
+
+            final int status;
+
+            ExitException(final int status)
+            {
+                super("System.exit(" + status + ")");
+                this.status = status;
+            }
+        }
+
+        // installed JVM-wide, there is no way to trap System.exit of one thread group only. Permissions are deliberately
+        // not checked, still every privileged operation of runner and tested programs pays for the security manager call
+        private static class ExitTrap extends SecurityManager
+        {
+            @Override
+            public void checkPermission(final Permission perm)
+            {}
+
+            @Override
+            public void checkPermission(final Permission perm, final Object context)
+            {}
+
+            @Override
+            public void checkExit(final int status)
+            {
+                if (current() != null)
+                {
+                    throw new ExitException(status);
+                }
+            }
+        }
+
+        private static class DispatchingInputStream extends InputStream
+        {
+            final InputStream fallback;
+
+            DispatchingInputStream(final InputStream fallback)
+            {
+                this.fallback = fallback;
+            }
+
+            private InputStream target()
+            {
+                final InProcessProcess process = current();
+                return process == null ? fallback : process.stdin;
+            }
+
+            @Override
+            public int read() throws IOException
+            {
+                return target().read();
+            }
+
+            @Override
+            public int read(final byte[] b, final int off, final int len) throws IOException
+            {
+                return target().read(b, off, len);
+            }
+
+            @Override
+            public int available() throws IOException
+            {
+                return target().available();
+            }
+
+            @Override
+            public void close() throws IOException
+            {
+                target().close();
+            }
+        }
+
+        private static class DispatchingOutputStream extends OutputStream
+        {
+            final OutputStream fallback;
+            final boolean error;
+
+            DispatchingOutputStream(final OutputStream fallback, final boolean error)
+            {
+                this.fallback = fallback;
+                this.error = error;
+            }
+
+            private OutputStream target()
+            {
+                final InProcessProcess process = current();
+                return process == null ? fallback : (error ? process.stderr : process.stdout);
+            }
+
+            @Override
+            public void write(final int b) throws IOException
+            {
+                final OutputStream target = target();
+                target.write(b);
+                if (target == fallback)
+                {
+                    fallback.flush();
+                }
+            }
+
+            @Override
+            public void write(final byte[] b, final int off, final int len) throws IOException
+            {
+                final OutputStream target = target();
+                target.write(b, off, len);
+                if (target == fallback)
+                {
+                    fallback.flush();
+                }
+            }
+
+            @Override
+            public void flush() throws IOException
+            {
+                target().flush();
+            }
+        }
+    }
+
+    private static class GeneratorCache
+    {
+        private static final String STDIN = "stdin";
+        private static final String STDOUT = "stdout";
+        private static final String STDERR = "stderr";
+        private static final String OUT_FILE_PREFIX = "outfile.";
+
+        final Path directory;
+
+        GeneratorCache(final Path directory)
+        {
+            this.directory = directory;
+        }
+
+        private void clear() throws IOException
+        {
+            if (Files.exists(directory))
+            {
+                try (var paths = Files.walk(directory))
+                {
+                    for (final Path path : paths.sorted(Comparator.reverseOrder()).toList())
+                    {
+                        Files.delete(path);
+                    }
+                }
+            }
+        }
+
+        private String key(final String kind, final List<String> command, final TestInfo test, final boolean withInput)
+            throws IOException
+        {
+            final MessageDigest digest = newDigest();
+            update(digest, kind);
+
+            // executable and every argument which is a file (eg. script of interpreter) are hashed by content
+            final Path executable = resolveExecutable(command.get(0), test.runDir);
+            update(digest, command.get(0));
+            if (executable != null)
+            {
+                update(digest, executable);
+            }
+            for (final String arg : command.subList(1, command.size()))
+            {
+                update(digest, arg);
+                final Path argFile = resolveFile(test.runDir, arg);
+                if (argFile != null)
+                {
+                    update(digest, argFile);
+                }
+            }
+
+            for (final Map.Entry<String, String> entry : new TreeMap<>(test.environment).entrySet())
+            {
+                update(digest, entry.getKey());
+                update(digest, entry.getValue());
+            }
+
+            if (withInput)
+            {
+                update(digest, test.hasInput() ? "stdin" : "");
+                if (test.inputBuffer != null)
+                {
+                    try (var input = test.inputBuffer.openStream())
+                    {
+                        update(digest, input);
+                    }
+                }
+                else if (test.hasInput())
+                {
+                    update(digest, test.input);
+                }
+                for (final Path in : test.inFiles)
+                {
+                    update(digest, in.getFileName().toString());
+                    if (Files.isRegularFile(in))
+                    {
+                        update(digest, in);
+                    }
+                }
+            }
+
+            return toHex(digest.digest());
+        }
+
+        private boolean restore(final String key, final Function<String, Path> targets) throws IOException
+        {
+            final Path entry = directory.resolve(key);
+            if (!Files.isDirectory(entry))
+            {
+                return false;
+            }
+
+            try (var artifacts = Files.list(entry))
+            {
+                for (final Path artifact : artifacts.toList())
+                {
+                    Files.copy(artifact, targets.apply(artifact.getFileName().toString()), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            return true;
+        }
+
+        private void store(final String key, final Map<String, Path> artifacts) throws IOException
+        {
+            Files.createDirectories(directory);
+            final Path temp = Files.createTempDirectory(directory, ".tmp-");
+            for (final Map.Entry<String, Path> artifact : artifacts.entrySet())
+            {
+                if (Files.exists(artifact.getValue()))
+                {
+                    Files.copy(artifact.getValue(), temp.resolve(artifact.getKey()));
+                }
+            }
+
+            try
+            {
+                Files.move(temp, directory.resolve(key), StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (final IOException e)
+            {
+                // other worker stored same entry first
+                new GeneratorCache(temp).clear();
+            }
+        }
+
+        private static MessageDigest newDigest()
+        {
+            try
+            {
+                return MessageDigest.getInstance("SHA-256");
+            }
+            catch (final NoSuchAlgorithmException e)
+            {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private static String toHex(final byte[] bytes)
+        {
+            final StringBuilder sb = new StringBuilder(2 * bytes.length);
+            for (final byte b : bytes)
+            {
+                sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+                sb.append(Character.forDigit(b & 0xf, 16));
+            }
+            return sb.toString();
+        }
+
+        private static void update(final MessageDigest digest, final String str)
+        {
+            final byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+            digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(bytes.length).flip());
+            digest.update(bytes);
+        }
+
+        private static void update(final MessageDigest digest, final Path file) throws IOException
+        {
+            try (var in = Files.newInputStream(file))
+            {
+                update(digest, in);
+            }
+        }
+
+        private static void update(final MessageDigest digest, final InputStream in) throws IOException
+        {
+            final byte[] buffer = new byte[1 << 16];
+            int read;
+            while ((read = in.read(buffer)) != -1)
+            {
+                digest.update(buffer, 0, read);
+            }
+        }
+
+        private static Path resolveExecutable(final String executable, final Path runDir)
+        {
+            if (executable.indexOf('/') != -1 || executable.indexOf('\\') != -1)
+            {
+                return resolveFile(runDir, executable);
+            }
+
+            final String path = System.getenv("PATH");
+            if (path != null)
+            {
+                for (final String dir : path.split(File.pathSeparator))
+                {
+                    final Path candidate = resolveFile(Path.of(dir), executable);
+                    if (candidate != null)
+                    {
+                        return candidate;
+                    }
+                }
+            }
+            return null;
+        }
+
+        private static Path resolveFile(final Path base, final String file)
+        {
+            try
+            {
+                final Path path = base.resolve(file);
+                return Files.isRegularFile(path) ? path : null;
+            }
+            catch (final InvalidPathException e)
+            {
+                return null;
+            }
+        }
+    }
+
+    private static class ProcessUsage
+    {
+        long spawnNanos;
+        long wallNanos;
+        long userNanos = -1;
+        long systemNanos = -1;
+        long peakRssKiB = -1;
+
+        private void add(final ProcessUsage other)
+        {
+            spawnNanos += other.spawnNanos;
+            wallNanos += other.wallNanos;
+            if (other.userNanos >= 0)
+            {
+                userNanos = Math.max(userNanos, 0) + other.userNanos;
+                systemNanos = Math.max(systemNanos, 0) + other.systemNanos;
+            }
+            peakRssKiB = Math.max(peakRssKiB, other.peakRssKiB);
+        }
+
+        private String describe()
+        {
+            return String.format("cpu: \t%s\tmem: \t%s\tspawn: \t%.2fms",
+                userNanos < 0 ? "n/a" :
+                    String.format("%.2fms (user %.2fms, sys %.2fms)",
+                        (userNanos + systemNanos) / 1000000.0d,
+                        userNanos / 1000000.0d,
+                        systemNanos / 1000000.0d),
+                peakRssKiB < 0 ? "n/a" : peakRssKiB + "KiB",
+                spawnNanos / 1000000.0d);
+        }
+    }
+
+    private static class ProcessSupervisor
+    {
+        private static final Set<Process> live = ConcurrentHashMap.newKeySet();
+        // time of first kill of process, its monitor stops wall clock there
+        private static final Map<Process, Long> killed = new ConcurrentHashMap<>();
+
+        // completes once process exited, with true if it was killed because of timeout, no thread waits for it meanwhile
+        private static CompletableFuture<Boolean> supervise(final Process process, final long timeoutMillis)
+        {
+            live.add(process);
+            final AtomicBoolean timeouted = new AtomicBoolean();
+            final ScheduledFuture<?> timeout = timeoutMillis < 0 ? null : monitorExecutor.schedule(() -> {
+                timeouted.set(true);
+                killTree(process);
+            }, timeoutMillis, TimeUnit.MILLISECONDS);
+
+            return process.onExit().thenApply(p -> {
+                if (timeout != null)
+                {
+                    timeout.cancel(false);
+                }
+                live.remove(process);
+                return timeouted.get();
+            });
+        }
+
+        // descendants must be collected before process dies, they are reparented afterwards
+        private static List<ProcessHandle> descendants(final Process process)
+        {
+            try
+            {
+                return process.descendants().toList();
+            }
+            catch (final UnsupportedOperationException e)
+            {
+                return List.of(); // in-process main
+            }
+        }
+
+        private static void killTree(final Process process)
+        {
+            if (process.isAlive())
+            {
+                killed.putIfAbsent(process, System.nanoTime());
+            }
+            final List<ProcessHandle> tree = descendants(process);
+            process.destroy();
+            tree.forEach(ProcessHandle::destroy);
+
+            monitorExecutor.schedule(() -> {
+                if (process.isAlive())
+                {
+                    process.destroyForcibly();
+                }
+                for (final ProcessHandle handle : tree)
+                {
+                    // survivor might have spawned new children meanwhile
+                    handle.descendants().forEach(ProcessHandle::destroyForcibly);
+                    handle.destroyForcibly();
+                }
+            }, killGraceMillis, TimeUnit.MILLISECONDS);
+        }
+
+        // scheduler does not run during shutdown, so grace period is waited for here
+        private static void shutdown()
+        {
+            final List<ProcessHandle> all = new ArrayList<>();
+            for (final Process process : live)
+            {
+                all.addAll(descendants(process));
+                process.destroy();
+            }
+            all.forEach(ProcessHandle::destroy);
+
+            final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(killGraceMillis);
+            while (System.nanoTime() < deadline && (live.stream().anyMatch(Process::isAlive) || all.stream().anyMatch(ProcessHandle::isAlive)))
+            {
+                try
+                {
+                    Thread.sleep(10);
+                }
+                catch (final InterruptedException e)
+                {
+                    break;
+                }
+            }
+            live.stream().filter(Process::isAlive).forEach(Process::destroyForcibly);
+            all.stream().filter(ProcessHandle::isAlive).forEach(ProcessHandle::destroyForcibly);
+        }
+
+        // plain number is in seconds, "ms", "s" and "m" suffixes are accepted, negative duration means no limit
+        private static long parseDuration(final String duration)
+        {
+            final String normalized = duration.strip().toLowerCase(Locale.ROOT);
+            final int suffix = normalized.endsWith("ms") ? 2 : normalized.endsWith("s") || normalized.endsWith("m") ? 1 : 0;
+            final long unitMillis = suffix == 2 ? 1 : normalized.endsWith("m") ? 60000 : 1000;
+            final BigDecimal number = new BigDecimal(normalized.substring(0, normalized.length() - suffix).strip());
+            if (number.signum() < 0)
+            {
+                return -1;
+            }
+            return number.multiply(BigDecimal.valueOf(unitMillis)).setScale(0, RoundingMode.CEILING).longValue();
+        }
+    }
+
+    private static class MemoryLimit
+    {
+        private static final AtomicInteger cgroupCounter = new AtomicInteger();
+        // delegated cgroup v2 of runner with memory controller enabled for children, null if not available
+        private static Path cgroupBase = null;
+        private static String prlimit = null;
+        private static boolean detected = false;
+
+        final long limitBytes;
+        final Path cgroup;
+
+        private MemoryLimit(final long limitBytes, final Path cgroup)
+        {
+            this.limitBytes = limitBytes;
+            this.cgroup = cgroup;
+        }
+
+        private static synchronized void detect()
+        {
+            if (detected)
+            {
+                return;
+            }
+            detected = true;
+
+            // rlimit is used instead if cgroup is not usable
+            String reason = null;
+            try
+            {
+                final String own = Files.readAllLines(Path.of("/proc/self/cgroup"))
+                    .stream()
+                    .filter(line -> line.startsWith("0::"))
+                    .map(line -> line.substring(3))
+                    .findFirst()
+                    .orElse(null);
+                // mount point is 5th field of mountinfo, filesystem type follows " - " separator
+                final String mount = Files.readAllLines(Path.of("/proc/self/mountinfo"))
+                    .stream()
+                    .filter(line -> line.contains(" - cgroup2 "))
+                    .map(line -> line.split(" ")[4])
+                    .findFirst()
+                    .orElse(null);
+                if (own == null || mount == null)
+                {
+                    reason = "no cgroup v2";
+                }
+                else
+                {
+                    final Path base = Path.of(mount, own);
+                    final Path subtreeControl = base.resolve("cgroup.subtree_control");
+                    if (!Files.readString(base.resolve("cgroup.controllers")).contains("memory"))
+                    {
+                        reason = "no memory controller in " + base;
+                    }
+                    else if (!Files.isWritable(subtreeControl))
+                    {
+                        reason = base + " is not delegated";
+                    }
+                    else
+                    {
+                        if (!Files.readString(subtreeControl).contains("memory"))
+                        {
+                            enableMemory(base);
+                        }
+                        cgroupBase = base;
+                    }
+                }
+            }
+            catch (final IOException | RuntimeException e)
+            {
+                reason = e.getMessage();
+            }
+
+            final Path prlimitPath = GeneratorCache.resolveExecutable("prlimit", Paths.get("."));
+            prlimit = prlimitPath == null ? null : prlimitPath.toString();
+
+            if (debug)
+            {
+                if (reason != null)
+                {
+                    System.err.println("DEBUG: cgroup memory limit not available: " + reason);
+                }
+                System.err.println("DEBUG: memory limit: " +
+                    (cgroupBase != null ? "cgroup " + cgroupBase : prlimit != null ? "prlimit" : "ulimit"));
+            }
+        }
+
+        // cgroup with processes can not enable controllers for children (no internal processes rule),
+        // so runner moves to leaf child first, cgroups of tests are its siblings. Undone on exit
+        private static void enableMemory(final Path base) throws IOException
+        {
+            final Path leaf = Files.createDirectories(base.resolve("runner"));
+            final String pid = Long.toString(ProcessHandle.current().pid());
+            Files.writeString(leaf.resolve("cgroup.procs"), pid);
+            try
+            {
+                Files.writeString(base.resolve("cgroup.subtree_control"), "+memory");
+            }
+            catch (final IOException e)
+            {
+                // other processes share the cgroup, runner goes back
+                Files.writeString(base.resolve("cgroup.procs"), pid);
+                Files.deleteIfExists(leaf);
+                throw new IOException("could not enable memory controller in " + base + ": " + e.getMessage(), e);
+            }
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> restoreCgroup(base, leaf, pid)));
+        }
+
+        // controller is disabled first, otherwise runner can not go back (no internal processes rule)
+        private static void restoreCgroup(final Path base, final Path leaf, final String pid)
+        {
+            try
+            {
+                Files.writeString(base.resolve("cgroup.subtree_control"), "-memory");
+                Files.writeString(base.resolve("cgroup.procs"), pid);
+                Files.delete(leaf);
+            }
+            catch (final IOException e)
+            {
+                System.err.println("WARNING: could not restore cgroup " + base + ": " + e.getMessage());
+            }
+        }
+
+        private static boolean isCgroup()
+        {
+            detect();
+            return cgroupBase != null;
+        }
+
+        // replaces command of builder with one that puts process under limit before exec
+        private static MemoryLimit apply(final ProcessBuilder pb, final long limitBytes) throws IOException
+        {
+            detect();
+
+            final List<String> command = new ArrayList<>();
+            Path cgroup = null;
+            if (cgroupBase != null)
+            {
+                try
+                {
+                    cgroup = Files.createDirectory(
+                        cgroupBase.resolve("tr-" + ProcessHandle.current().pid() + "-" + cgroupCounter.incrementAndGet()));
+                    Files.writeString(cgroup.resolve("memory.max"), Long.toString(limitBytes));
+                    if (Files.exists(cgroup.resolve("memory.swap.max")))
+                    {
+                        Files.writeString(cgroup.resolve("memory.swap.max"), "0");
+                    }
+                    command.addAll(List.of("sh", "-c", "echo $$ > \"$0/cgroup.procs\" && exec \"$@\"", cgroup.toString()));
+                }
+                catch (final IOException e)
+                {
+                    System.err.println("WARNING: could not create cgroup, using rlimit: " + e.getMessage());
+                    deleteCgroup(cgroup);
+                    cgroup = null;
+                }
+            }
+            if (cgroup == null && prlimit != null)
+            {
+                command.addAll(List.of(prlimit, "--data=" + limitBytes, "--"));
+            }
+            else if (cgroup == null)
+            {
+                command.addAll(List.of("sh", "-c", "ulimit -d " + (limitBytes / 1024) + " && exec \"$@\"", "sh"));
+            }
+
+            command.addAll(pb.command());
+            pb.command(command);
+            return new MemoryLimit(limitBytes, cgroup);
+        }
+
+        private boolean isExceeded(final ProcessUsage usage)
+        {
+            if (cgroup != null)
+            {
+                try
+                {
+                    for (final String line : Files.readAllLines(cgroup.resolve("memory.events")))
+                    {
+                        if (line.startsWith("oom_kill ") && Long.parseLong(line.substring(9).trim()) > 0)
+                        {
+                            return true;
+                        }
+                    }
+                }
+                catch (final IOException | RuntimeException e)
+                {}
+            }
+            return usage.peakRssKiB * 1024 > limitBytes;
+        }
+
+        // peak of whole cgroup, including children of process, if kernel reports it
+        private void finish(final ProcessUsage usage)
+        {
+            if (cgroup != null)
+            {
+                try
+                {
+                    final Path peak = cgroup.resolve("memory.peak");
+                    if (Files.exists(peak))
+                    {
+                        usage.peakRssKiB = Math.max(usage.peakRssKiB, Long.parseLong(Files.readString(peak).trim()) / 1024);
+                    }
+                }
+                catch (final IOException | RuntimeException e)
+                {}
+            }
+        }
+
+        private void close()
+        {
+            if (cgroup != null)
+            {
+                try
+                {
+                    // leftover descendants would keep cgroup busy
+                    if (Files.exists(cgroup.resolve("cgroup.kill")))
+                    {
+                        Files.writeString(cgroup.resolve("cgroup.kill"), "1");
+                    }
+                    for (int i = 0; i < 100 && !Files.readString(cgroup.resolve("cgroup.procs")).isBlank(); i++)
+                    {
+                        Thread.sleep(10);
+                    }
+                }
+                catch (final IOException | InterruptedException e)
+                {}
+            }
+            deleteCgroup(cgroup);
+        }
+
+        private static void deleteCgroup(final Path cgroup)
+        {
+            if (cgroup != null)
+            {
+                try
+                {
+                    Files.deleteIfExists(cgroup);
+                }
+                catch (final IOException e)
+                {
+                    System.err.println("WARNING: could not remove cgroup " + cgroup + ": " + e.getMessage());
+                }
+            }
+        }
+
+        private static long parseSize(final String size)
+        {
+            final String normalized = size.strip().toLowerCase(Locale.ROOT).replaceFirst("i?b$", "");
+            final int unit = "kmg".indexOf(normalized.isEmpty() ? ' ' : normalized.charAt(normalized.length() - 1));
+            final long number = Long.parseLong(unit == -1 ? normalized : normalized.substring(0, normalized.length() - 1).strip());
+            if (number <= 0)
+            {
+                throw new NumberFormatException("non-positive size: " + size);
+            }
+            try
+            {
+                return Math.multiplyExact(number, 1L << (unit == -1 ? 0 : 10 * (unit + 1)));
+            }
+            catch (final ArithmeticException e)
+            {
+                throw new NumberFormatException("size too large: " + size);
+            }
+        }
+    }
+
+    private static class ProcessMonitor implements Runnable
+    {
+        private static final long CLOCK_TICK_NANOS = clockTickNanos();
+        private static final Path PROC = Path.of("/proc");
+
+        final Process process;
+        final long started;
+        // exact accounting from reaped children of runner, available only if no other child runs concurrently
+        final long[] childrenTicksBefore;
+        final ProcessUsage usage = new ProcessUsage();
+        ScheduledFuture<?> sampling;
+        MemoryLimit memoryLimit;
+        boolean memoryExceeded;
+        long cpuLimitNanos = -1;
+        boolean cpuExceeded;
+        List<Path> outputFiles = List.of();
+        long outputLimit = -1;
+        boolean outputExceeded;
+
+        private ProcessMonitor(final Process process, final long started, final long[] childrenTicksBefore)
+        {
+            this.process = process;
+            this.started = started;
+            this.childrenTicksBefore = childrenTicksBefore;
+        }
+
+        private static ProcessMonitor launch(final ProcessBuilder pb,
+            final boolean inProcessMain,
+            final long memoryLimitBytes,
+            final long cpuLimitMillis) throws IOException
+        {
+            final long[] childrenTicksBefore = exclusiveChildren && !inProcessMain ? readChildrenTicks() : null;
+            final List<String> command = pb.command();
+            final MemoryLimit memoryLimit = memoryLimitBytes > 0 && !inProcessMain ? MemoryLimit.apply(pb, memoryLimitBytes) : null;
+            final long spawnStart = System.nanoTime();
+            final Process process;
+            try
+            {
+                process = inProcessMain ? InProcessProcess.start(pb) : pb.start();
+            }
+            catch (final IOException e)
+            {
+                if (memoryLimit != null)
+                {
+                    memoryLimit.close();
+                }
+                throw e;
+            }
+            finally
+            {
+                // builder is reused by benchmark, which applies its own limit
+                pb.command(command);
+            }
+            final ProcessMonitor monitor = new ProcessMonitor(process, System.nanoTime(), childrenTicksBefore);
+            monitor.usage.spawnNanos = monitor.started - spawnStart;
+            monitor.memoryLimit = memoryLimit;
+            monitor.cpuLimitNanos = cpuLimitMillis < 0 ? -1 : TimeUnit.MILLISECONDS.toNanos(cpuLimitMillis);
+            monitor.sampling = monitorExecutor.scheduleAtFixedRate(monitor, 0, sampleInterval, TimeUnit.MILLISECONDS);
+            return monitor;
+        }
+
+        @Override
+        public synchronized void run()
+        {
+            checkOutputFiles();
+            if (process instanceof InProcessProcess inProcessProcess)
+            {
+                inProcessProcess.sampleCpu();
+                checkCpuLimit(inProcessProcess.cpuTimes()[1]);
+                return;
+            }
+
+            final Path procDir = PROC.resolve(Long.toString(process.pid()));
+            try
+            {
+                // own and reaped children times, see proc(5), and times of running descendants (eg. of sh -c wrapper)
+                final String[] stat = readStat(procDir.resolve("stat"));
+                final long[] descendants = descendantsUsage(procDir);
+                final long userTicks = Long.parseLong(stat[11]) + Long.parseLong(stat[13]) + descendants[1];
+                final long systemTicks = Long.parseLong(stat[12]) + Long.parseLong(stat[14]) + descendants[2];
+                // descendant exiting between reads is missed until its parent reaps it, so keep what was seen
+                usage.userNanos = Math.max(usage.userNanos, userTicks * CLOCK_TICK_NANOS);
+                usage.systemNanos = Math.max(usage.systemNanos, systemTicks * CLOCK_TICK_NANOS);
+
+                // peak of process itself, or its current memory together with descendants
+                long ownRssKiB = 0;
+                for (final String line : Files.readAllLines(procDir.resolve("status")))
+                {
+                    if (line.startsWith("VmHWM:"))
+                    {
+                        usage.peakRssKiB = Math.max(usage.peakRssKiB, parseKiB(line));
+                    }
+                    else if (line.startsWith("VmRSS:"))
+                    {
+                        ownRssKiB = parseKiB(line);
+                    }
+                }
+                usage.peakRssKiB = Math.max(usage.peakRssKiB, ownRssKiB + descendants[0]);
+
+                // rlimit does not cover resident memory, so sampled peak is enforced too
+                if (memoryLimit != null && !memoryExceeded && usage.peakRssKiB * 1024 > memoryLimit.limitBytes)
+                {
+                    memoryExceeded = true;
+                    ProcessSupervisor.killTree(process);
+                }
+                checkCpuLimit(usage.userNanos + usage.systemNanos);
+            }
+            catch (final IOException | RuntimeException e)
+            {
+                // process already gone or no procfs, use whatever JVM knows
+                process.info().totalCpuDuration().ifPresent(cpu -> {
+                    usage.userNanos = cpu.toNanos();
+                    usage.systemNanos = 0;
+                });
+            }
+        }
+
+        private synchronized ProcessUsage finish()
+        {
+            // killed process is measured until it was killed, not until kill grace ends
+            final Long killed = ProcessSupervisor.killed.remove(process);
+            usage.wallNanos = (killed != null ? killed : System.nanoTime()) - started;
+            sampling.cancel(false);
+
+            if (process instanceof InProcessProcess inProcessProcess)
+            {
+                final long[] cpu = inProcessProcess.cpuTimes();
+                usage.userNanos = cpu[0];
+                usage.systemNanos = cpu[1] - cpu[0];
+            }
+            else if (childrenTicksBefore != null)
+            {
+                // descendants of killed tree are reaped by init and never show up here, so last sample may be higher
+                final long[] childrenTicks = readChildrenTicks();
+                if (childrenTicks != null)
+                {
+                    usage.userNanos = Math.max(usage.userNanos, (childrenTicks[0] - childrenTicksBefore[0]) * CLOCK_TICK_NANOS);
+                    usage.systemNanos = Math.max(usage.systemNanos, (childrenTicks[1] - childrenTicksBefore[1]) * CLOCK_TICK_NANOS);
+                }
+            }
+
+            if (memoryLimit != null)
+            {
+                memoryLimit.finish(usage);
+                memoryExceeded |= memoryLimit.isExceeded(usage);
+                memoryLimit.close();
+            }
+            // exact accounting may reveal overrun between last sample and exit
+            checkOutputFiles();
+            cpuExceeded |= cpuLimitNanos >= 0 && usage.userNanos >= 0 && usage.userNanos + usage.systemNanos > cpuLimitNanos;
+            return usage;
+        }
+
+        private synchronized void limitOutputFiles(final List<Path> files, final long limit)
+        {
+            outputFiles = files;
+            outputLimit = limit;
+        }
+
+        // size of output files is sampled like cpu time, so they may overrun limit by what is written in one interval
+        private void checkOutputFiles()
+        {
+            if (outputLimit < 0 || outputExceeded)
+            {
+                return;
+            }
+            for (final Path file : outputFiles)
+            {
+                try
+                {
+                    if (Files.size(file) > outputLimit)
+                    {
+                        outputExceeded = true;
+                        ProcessSupervisor.killTree(process);
+                        return;
+                    }
+                }
+                catch (final IOException e)
+                {
+                    // not created yet
+                }
+            }
+        }
+
+        // cpu time is sampled only, so process may overrun limit by up to one sampling interval
+        private void checkCpuLimit(final long cpuNanos)
+        {
+            if (cpuLimitNanos >= 0 && !cpuExceeded && cpuNanos > cpuLimitNanos)
+            {
+                cpuExceeded = true;
+                ProcessSupervisor.killTree(process);
+            }
+        }
+
+        // USER_HZ of stat files, getconf is run once
+        private static long clockTickNanos()
+        {
+            try
+            {
+                final Process getconf = new ProcessBuilder("getconf", "CLK_TCK").redirectErrorStream(true).start();
+                final String hz = new String(getconf.getInputStream().readAllBytes(), StandardCharsets.US_ASCII).strip();
+                if (getconf.waitFor() == 0 && Long.parseLong(hz) > 0)
+                {
+                    return TimeUnit.SECONDS.toNanos(1) / Long.parseLong(hz);
+                }
+            }
+            catch (final IOException | NumberFormatException e)
+            {}
+            catch (final InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            return 10000000; // no getconf, USER_HZ is 100 on practically every Linux
+        }
+
+        // resident memory, user and system ticks (with their reaped children) of all descendants at this moment,
+        // children files need kernel with CONFIG_PROC_CHILDREN
+        private static long[] descendantsUsage(final Path procDir)
+        {
+            final long[] total = new long[3];
+            final List<Path> pending = new ArrayList<>(List.of(procDir));
+            for (int i = 0; i < pending.size(); i++)
+            {
+                try (var tasks = Files.newDirectoryStream(pending.get(i).resolve("task")))
+                {
+                    for (final Path task : tasks)
+                    {
+                        final String children = Files.readString(task.resolve("children")).strip();
+                        if (!children.isEmpty())
+                        {
+                            for (final String child : children.split(" "))
+                            {
+                                pending.add(PROC.resolve(child));
+                            }
+                        }
+                    }
+                    if (i > 0)
+                    {
+                        final String[] stat = readStat(pending.get(i).resolve("stat"));
+                        total[1] += Long.parseLong(stat[11]) + Long.parseLong(stat[13]);
+                        total[2] += Long.parseLong(stat[12]) + Long.parseLong(stat[14]);
+                        for (final String line : Files.readAllLines(pending.get(i).resolve("status")))
+                        {
+                            if (line.startsWith("VmRSS:"))
+                            {
+                                total[0] += parseKiB(line);
+                                break;
+                            }
+                        }
+                    }
+                }
+                catch (final IOException | RuntimeException e)
+                {
+                    // exited meanwhile
+                }
+            }
+            return total;
+        }
+
+        private static long parseKiB(final String statusLine)
+        {
+            return Long.parseLong(statusLine.substring(statusLine.indexOf(':') + 1).replace("kB", "").trim());
+        }
+
+        private static long[] readChildrenTicks()
+        {
+            try
+            {
+                final String[] stat = readStat(PROC.resolve("self").resolve("stat"));
+                return new long[] {Long.parseLong(stat[13]), Long.parseLong(stat[14])};
+            }
+            catch (final IOException | RuntimeException e)
+            {
+                return null;
+            }
+        }
+
+        // fields of stat file starting with state (3rd field), comm is skipped as it may contain spaces
+        private static String[] readStat(final Path stat) throws IOException
+        {
+            final String content = Files.readString(stat);
+            return content.substring(content.lastIndexOf(')') + 2).split(" ");
+        }
+    }
+
+    private enum Verdict
+    {
+        OK("OK"),
+        ERROR("ERROR"),
+        TIMEOUT("TIMEOUT"),
+        REGRESSED("REGRESSED"),
+        MEMORY_LIMIT("MEMORY LIMIT"),
+        CPU_TIMEOUT("CPU TIMEOUT"),
+        OUTPUT_LIMIT("OUTPUT LIMIT");
+
+        final String label;
+
+        Verdict(final String label)
+        {
+            this.label = label;
+        }
+
+        @Override
+        public String toString()
+        {
+            return label;
+        }
+    }
+
+    private static class BenchmarkResult
+    {
+        final long medianWall;
+        final long medianCpu;
+
+        BenchmarkResult(final long[] wall, final long[] cpu)
+        {
+            this.medianWall = median(wall);
+            this.medianCpu = median(cpu);
+        }
+
+        private static long median(final long[] values)
+        {
+            final long[] sorted = values.clone();
+            Arrays.sort(sorted);
+            if (sorted.length == 0 || sorted[0] < 0)
+            {
+                return -1;
+            }
+            final int half = sorted.length / 2;
+            return sorted.length % 2 == 1 ? sorted[half] : (sorted[half - 1] + sorted[half]) / 2;
+        }
+
+        private static String describe(final long[] values)
+        {
+            final long[] sorted = values.clone();
+            Arrays.sort(sorted);
+            if (sorted.length == 0 || sorted[0] < 0)
+            {
+                return "n/a";
+            }
+
+            double mean = 0;
+            for (final long value : sorted)
+            {
+                mean += value;
+            }
+            mean /= sorted.length;
+            double variance = 0;
+            for (final long value : sorted)
+            {
+                variance += (value - mean) * (value - mean);
+            }
+            variance /= sorted.length;
+
+            // nearest-rank percentile
+            final long p95 = sorted[(int) Math.ceil(0.95d * sorted.length) - 1];
+
+            return String.format("min %.2fms\tmedian %.2fms\tp95 %.2fms\tstddev %.2fms",
+                sorted[0] / 1000000.0d,
+                median(sorted) / 1000000.0d,
+                p95 / 1000000.0d,
+                Math.sqrt(variance) / 1000000.0d);
+        }
+    }
+
+    private static class Baseline
+    {
+        final Path file;
+        // test name -> [median wall, median cpu]
+        final Map<String, long[]> entries = new ConcurrentHashMap<>();
+
+        Baseline(final Path file)
+        {
+            this.file = file;
+        }
+
+        private static Baseline load(final Path file) throws IOException
+        {
+            final Baseline baseline = new Baseline(file);
+            if (Files.exists(file))
+            {
+                for (final String line : Files.readAllLines(file))
+                {
+                    final String[] parts = line.split("\t");
+                    if (parts.length == 3)
+                    {
+                        baseline.entries.put(parts[0], new long[] {Long.parseLong(parts[1]), Long.parseLong(parts[2])});
+                    }
+                }
+            }
+            return baseline;
+        }
+
+        private boolean isRegression(final String name, final BenchmarkResult result, final PrintStream out)
+        {
+            if (!hasBaseline(name))
+            {
+                out.println("\tNo baseline yet");
+                out.println();
+                return false;
+            }
+
+            final long[] entry = entries.get(name);
+            final double change = 100.0d * (result.medianWall - entry[0]) / entry[0];
+            out.printf("\tMedian wall time %.2fms against baseline %.2fms (%+.1f%%)%n%n",
+                result.medianWall / 1000000.0d,
+                entry[0] / 1000000.0d,
+                change);
+            return change > benchmarkThreshold;
+        }
+
+        // zero median (eg. of too coarse clock) is no baseline to compare with
+        private boolean hasBaseline(final String name)
+        {
+            final long[] entry = entries.get(name);
+            return entry != null && entry[0] > 0;
+        }
+
+        private void save(final List<TestResult> results) throws IOException
+        {
+            for (final TestResult result : results)
+            {
+                if (result.benchmark != null && (benchmarkUpdate || !hasBaseline(result.name)))
+                {
+                    entries.put(result.name, new long[] {result.benchmark.medianWall, result.benchmark.medianCpu});
+                }
+            }
+
+            Files.write(file,
+                new TreeMap<>(entries).entrySet()
+                    .stream()
+                    .map(e -> e.getKey() + "\t" + e.getValue()[0] + "\t" + e.getValue()[1])
+                    .toList());
+        }
+    }
+
+    private static class ResultDatabase
+    {
+        private static final int MAGIC = 0x54524442; // TRDB
+        private static final int VERSION = 1;
+        // files modified this close to previous save might have been changed after they were hashed
+        private static final long RACY_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+        final Path file;
+        long previousSave = Long.MIN_VALUE;
+        final Map<String, FileDigest> previousFiles = new HashMap<>();
+        final Map<String, TestEntry> previousTests = new HashMap<>();
+
+        final Map<String, FileDigest> files = new ConcurrentHashMap<>();
+        final Map<String, byte[]> digests = new ConcurrentHashMap<>();
+
+        ResultDatabase(final Path file)
+        {
+            this.file = file;
+        }
+
+        private static ResultDatabase load(final Path file) throws IOException
+        {
+            final ResultDatabase database = new ResultDatabase(file);
+            if (!Files.exists(file))
+            {
+                return database;
+            }
+
+            try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file))))
+            {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                {
+                    System.err.println("WARNING: unknown format of result database, ignoring: " + file);
+                    return database;
+                }
+                database.previousSave = in.readLong();
+
+                final int fileCount = in.readInt();
+                for (int i = 0; i < fileCount; i++)
+                {
+                    final String path = in.readUTF();
+                    database.previousFiles.put(path, new FileDigest(in.readLong(), in.readLong(), readDigest(in)));
+                }
+
+                final int testCount = in.readInt();
+                for (int i = 0; i < testCount; i++)
+                {
+                    final String name = in.readUTF();
+                    database.previousTests.put(name, new TestEntry(readDigest(in), in.readUTF()));
+                }
+            }
+            catch (final EOFException e)
+            {
+                System.err.println("WARNING: truncated result database, ignoring: " + file);
+                database.previousFiles.clear();
+                database.previousTests.clear();
+            }
+            return database;
+        }
+
+        private void digestTests(final List<TestDescriptor> tests, final String[] mainBase) throws IOException
+        {
+            final MessageDigest mainDigest = GeneratorCache.newDigest();
+            final Path cwd = Paths.get(".").toAbsolutePath().normalize();
+            for (int i = 0; i < mainBase.length; i++)
+            {
+                GeneratorCache.update(mainDigest, mainBase[i]);
+                for (final String entry : inProcess && i == 0 ? mainBase[i].split(File.pathSeparator) : new String[] {mainBase[i]})
+                {
+                    final Path path = i == 0 && !inProcess ? GeneratorCache.resolveExecutable(entry, cwd) :
+                        GeneratorCache.resolveFile(cwd, entry);
+                    if (path != null)
+                    {
+                        mainDigest.update(digestFile(path));
+                    }
+                }
+            }
+            final byte[] main = mainDigest.digest();
+
+            try
+            {
+                tests.parallelStream().forEach(test -> {
+                    try
+                    {
+                        digests.put(test.name, digestTest(test, main));
+                    }
+                    catch (final IOException e)
+                    {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+            catch (final UncheckedIOException e)
+            {
+                throw e.getCause();
+            }
+        }
+
+        private byte[] digestTest(final TestDescriptor test, final byte[] main) throws IOException
+        {
+            final MessageDigest digest = GeneratorCache.newDigest();
+            digest.update(main);
+
+            for (final FileExtension extension : FileExtension.fileExtensionsById)
+            {
+                final Path path = test.file(extension);
+                if (path != null && Files.isRegularFile(path))
+                {
+                    GeneratorCache.update(digest, extension.description);
+                    digest.update(digestFile(path));
+                }
+            }
+
+            // content of input files and generator executables is not part of test files
+            if (test.inputFiles != null)
+            {
+                for (final String line : test.inputFiles)
+                {
+                    final Path in = GeneratorCache.resolveFile(test.folder, line);
+                    if (in != null)
+                    {
+                        GeneratorCache.update(digest, line);
+                        digest.update(digestFile(in));
+                    }
+                }
+            }
+            for (final List<String> generator : Arrays.asList(test.generate, test.refsolution, test.checkerCommand))
+            {
+                final List<String> command = generator == null ? List.of() : generator;
+                final Path executable = command.isEmpty() ? null : GeneratorCache.resolveExecutable(command.get(0), test.folder);
+                if (executable != null)
+                {
+                    digest.update(digestFile(executable));
+                }
+            }
+
+            return digest.digest();
+        }
+
+        // size and modification time shortcut, file is hashed only if it changed since last run
+        private byte[] digestFile(final Path path) throws IOException
+        {
+            final String key = path.toAbsolutePath().normalize().toString();
+            final BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            final long size = attributes.size();
+            final long modified = attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+
+            final FileDigest known = files.get(key);
+            if (known != null && known.size == size && known.modified == modified)
+            {
+                return known.digest;
+            }
+            final FileDigest previous = previousFiles.get(key);
+            if (previous != null && previous.size == size && previous.modified == modified && modified < previousSave - RACY_NANOS)
+            {
+                files.put(key, previous);
+                return previous.digest;
+            }
+
+            final MessageDigest digest = GeneratorCache.newDigest();
+            GeneratorCache.update(digest, path);
+            final FileDigest computed = new FileDigest(size, modified, digest.digest());
+            files.put(key, computed);
+            return computed.digest;
+        }
+
+        private boolean isUnchanged(final TestInfo test)
+        {
+            final TestEntry previous = previousTests.get(test.name);
+            return previous != null && Verdict.OK.name().equals(previous.verdict) &&
+                Arrays.equals(previous.digest, digests.get(test.name));
+        }
+
+        private void save(final List<TestResult> results) throws IOException
+        {
+            final Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp))))
+            {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(Instant.now().getEpochSecond() * 1000000000L);
+
+                out.writeInt(files.size());
+                for (final Map.Entry<String, FileDigest> entry : files.entrySet())
+                {
+                    out.writeUTF(entry.getKey());
+                    out.writeLong(entry.getValue().size);
+                    out.writeLong(entry.getValue().modified);
+                    out.write(entry.getValue().digest);
+                }
+
+                // tests not run this time (watch mode, fail fast) keep their entries
+                for (final TestResult result : results)
+                {
+                    if (digests.containsKey(result.name))
+                    {
+                        previousTests.put(result.name, new TestEntry(digests.get(result.name), result.verdict.name()));
+                    }
+                }
+                out.writeInt(previousTests.size());
+                for (final Map.Entry<String, TestEntry> entry : previousTests.entrySet())
+                {
+                    out.writeUTF(entry.getKey());
+                    out.write(entry.getValue().digest);
+                    out.writeUTF(entry.getValue().verdict);
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        private static byte[] readDigest(final DataInputStream in) throws IOException
+        {
+            final byte[] digest = new byte[32];
+            in.readFully(digest);
+            return digest;
+        }
+
+        private static class FileDigest
+        {
+            final long size;
+            final long modified;
+            final byte[] digest;
+
+            FileDigest(final long size, final long modified, final byte[] digest)
+            {
+                this.size = size;
+                this.modified = modified;
+                this.digest = digest;
+            }
+        }
+
+        private static class TestEntry
+        {
+            final byte[] digest;
+            final String verdict;
+
+            TestEntry(final byte[] digest, final String verdict)
+            {
+                this.digest = digest;
+                this.verdict = verdict;
+            }
+        }
+    }
+
+    private static class Manifest
+    {
+        private static final int MAGIC = 0x54524d46; // TRMF
+        private static final int VERSION = 1;
+
+        final Path file;
+        long previousSave = Long.MIN_VALUE;
+        long previousFolderModified;
+        String previousExtensions = "";
+        final Map<String, Integer> previousListing = new HashMap<>();
+        final Map<String, ConfigFile> previousFiles = new HashMap<>();
+
+        long folderModified;
+        Map<String, Integer> listing = Map.of();
+        final Map<String, ConfigFile> files = new ConcurrentHashMap<>();
+        volatile boolean changed;
+
+        Manifest(final Path file)
+        {
+            this.file = file;
+        }
+
+        private static Manifest load(final Path file) throws IOException
+        {
+            final Manifest manifest = new Manifest(file);
+            if (!Files.exists(file))
+            {
+                return manifest;
+            }
+
+            try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file))))
+            {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                {
+                    System.err.println("WARNING: unknown format of test manifest, ignoring: " + file);
+                    return manifest;
+                }
+                manifest.previousSave = in.readLong();
+                manifest.previousFolderModified = in.readLong();
+                manifest.previousExtensions = in.readUTF();
+
+                final int testCount = in.readInt();
+                for (int i = 0; i < testCount; i++)
+                {
+                    final String name = in.readUTF();
+                    manifest.previousListing.put(name, in.readInt());
+                }
+
+                final int fileCount = in.readInt();
+                for (int i = 0; i < fileCount; i++)
+                {
+                    final String name = in.readUTF();
+                    final long size = in.readLong();
+                    final long modified = in.readLong();
+                    final byte[] content = new byte[in.readInt()];
+                    in.readFully(content);
+                    manifest.previousFiles.put(name, new ConfigFile(size, modified, new String(content, StandardCharsets.UTF_8)));
+                }
+            }
+            catch (final EOFException e)
+            {
+                System.err.println("WARNING: truncated test manifest, ignoring: " + file);
+                manifest.previousListing.clear();
+                manifest.previousFiles.clear();
+            }
+            return manifest;
+        }
+
+        private static String extensions()
+        {
+            return FileExtension.fileExtensionsById.stream().map(ext -> ext.extension).collect(Collectors.joining(","));
+        }
+
+        // listing of previous run, if test folder did not get any file added, removed or renamed since then
+        private Map<String, Integer> listing(final long folderModified)
+        {
+            final boolean valid = !previousListing.isEmpty() && previousFolderModified == folderModified &&
+                folderModified < previousSave - ResultDatabase.RACY_NANOS && previousExtensions.equals(extensions());
+            return valid ? previousListing : null;
+        }
+
+        // content of config file, read again only if its size or modification time changed
+        private String read(final Path path) throws IOException
+        {
+            final String key = path.getFileName().toString();
+            final BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            final long size = attributes.size();
+            final long modified = attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+
+            final ConfigFile previous = previousFiles.get(key);
+            if (previous != null && previous.size == size && previous.modified == modified && modified < previousSave - ResultDatabase.RACY_NANOS)
+            {
+                files.put(key, previous);
+                return previous.content;
+            }
+
+            final ConfigFile read = new ConfigFile(size, modified, Files.readString(path));
+            files.put(key, read);
+            changed = true;
+            return read.content;
+        }
+
+        private void update(final long folderModified, final Map<String, Integer> listing)
+        {
+            this.folderModified = folderModified;
+            this.listing = listing;
+            changed |= listing != previousListing || files.size() != previousFiles.size();
+        }
+
+        private void save() throws IOException
+        {
+            if (!changed)
+            {
+                return;
+            }
+
+            final Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp))))
+            {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(Instant.now().getEpochSecond() * 1000000000L);
+                out.writeLong(folderModified);
+                out.writeUTF(extensions());
+
+                out.writeInt(listing.size());
+                for (final Map.Entry<String, Integer> entry : listing.entrySet())
+                {
+                    out.writeUTF(entry.getKey());
+                    out.writeInt(entry.getValue());
+                }
+
+                out.writeInt(files.size());
+                for (final Map.Entry<String, ConfigFile> entry : files.entrySet())
+                {
+                    final byte[] content = entry.getValue().content.getBytes(StandardCharsets.UTF_8);
+                    out.writeUTF(entry.getKey());
+                    out.writeLong(entry.getValue().size);
+                    out.writeLong(entry.getValue().modified);
+                    out.writeInt(content.length);
+                    out.write(content);
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        private static class ConfigFile
+        {
+            final long size;
+            final long modified;
+            final String content;
+
+            ConfigFile(final long size, final long modified, final String content)
+            {
+                this.size = size;
+                this.modified = modified;
+                this.content = content;
+            }
+        }
+    }
+
+    private static class HistoryEntry
+    {
+        long durationNanos = -1;
+        boolean failed;
+        int runs;
+        int flips;
+
+        private double flakeRate()
+        {
+            return runs > 1 ? (double) flips / (runs - 1) : 0.0d;
+        }
+    }
+
+    private static class History
+    {
+        final Path file;
+        final Map<String, HistoryEntry> entries = new ConcurrentHashMap<>();
+
+        History(final Path file)
+        {
+            this.file = file;
+        }
+
+        private static History load(final Path file) throws IOException
+        {
+            final History history = new History(file);
+            if (Files.exists(file))
+            {
+                for (final String line : Files.readAllLines(file))
+                {
+                    final String[] parts = line.split("\t");
+                    if (parts.length >= 2 && !line.startsWith("#"))
+                    {
+                        final HistoryEntry entry = new HistoryEntry();
+                        entry.durationNanos = Long.parseLong(parts[1]);
+                        if (parts.length >= 5)
+                        {
+                            entry.failed = Boolean.parseBoolean(parts[2]);
+                            entry.runs = Integer.parseInt(parts[3]);
+                            entry.flips = Integer.parseInt(parts[4]);
+                        }
+                        history.entries.put(parts[0], entry);
+                    }
+                }
+            }
+            return history;
+        }
+
+        private void update(final List<TestResult> results)
+        {
+            for (final TestResult result : results)
+            {
+                if (!result.cached)
+                {
+                    final HistoryEntry entry = entries.computeIfAbsent(result.name, name -> new HistoryEntry());
+                    entry.durationNanos = result.testNanos;
+                    if (entry.runs > 0 && entry.failed == result.isCorrect())
+                    {
+                        entry.flips++;
+                    }
+                    entry.failed = !result.isCorrect();
+                    entry.runs++;
+                }
+            }
+        }
+
+        private void save() throws IOException
+        {
+            final List<String> lines = new ArrayList<>(entries.size() + 1);
+            lines.add("# TestRunner history: name, duration, failed last time, runs, verdict flips");
+            new TreeMap<>(entries).forEach((name, entry) -> lines.add(
+                name + "\t" + entry.durationNanos + "\t" + entry.failed + "\t" + entry.runs + "\t" + entry.flips));
+            Files.write(file, lines);
+        }
+    }
+
+    private static class ResultFile
+    {
+        private static final String HEADER = "# TestRunner results v1: name, verdict, test time, main time";
+
+        private static void write(final Path file, final List<TestResult> results) throws IOException
+        {
+            final List<String> lines = new ArrayList<>(results.size() + 1);
+            lines.add(HEADER);
+            for (final TestResult result : results)
+            {
+                lines.add(result.name + "\t" + result.verdict.name() + "\t" + result.testNanos + "\t" + result.mainUsage.wallNanos);
+            }
+            Files.write(file, lines);
+        }
+
+        private static List<TestResult> read(final Path file) throws IOException
+        {
+            final List<String> lines = Files.readAllLines(file);
+            if (lines.isEmpty() || !HEADER.equals(lines.get(0)))
+            {
+                throw new IOException("not a TestRunner result file: " + file);
+            }
+
+            final List<TestResult> results = new ArrayList<>(lines.size() - 1);
+            for (final String line : lines.subList(1, lines.size()))
+            {
+                final String[] parts = line.split("\t");
+                final ProcessUsage mainUsage = new ProcessUsage();
+                mainUsage.wallNanos = Long.parseLong(parts[3]);
+                results.add(new TestResult(parts[0], Verdict.valueOf(parts[1]), mainUsage, new ProcessUsage(), Long.parseLong(parts[2])));
+            }
+            return results;
+        }
+    }
+
+    // receives finished tests in order of test list, always from one thread
+    private interface Reporter extends Closeable
+    {
+        void report(TestResult result) throws IOException;
+
+        // waits until everything reported so far is written
+        void flush() throws IOException;
+    }
+
+    // writes on its own thread, tests never wait for console or disk
+    private static class ReportWriter implements Closeable
+    {
+        private static final byte[] END = new byte[0];
+
+        final OutputStream target;
+        final boolean closeTarget;
+        // data or latch of flush request
+        final BlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+        final Thread thread;
+        volatile IOException failure;
+
+        ReportWriter(final OutputStream target, final boolean closeTarget, final String name)
+        {
+            this.target = new BufferedOutputStream(target, 1 << 16);
+            this.closeTarget = closeTarget;
+            this.thread = new Thread(this::drain, "TestRunner-" + name);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        private void write(final byte[] data) throws IOException
+        {
+            if (failure != null)
+            {
+                throw failure;
+            }
+            queue.add(data);
+        }
+
+        private void drain()
+        {
+            try
+            {
+                for (Object item = queue.take(); item != END; item = queue.take())
+                {
+                    if (item instanceof byte[] data)
+                    {
+                        target.write(data);
+                    }
+                    // flush once everything queued so far is written
+                    if (queue.isEmpty() || item instanceof CountDownLatch)
+                    {
+                        target.flush();
+                    }
+                    if (item instanceof CountDownLatch flushed)
+                    {
+                        flushed.countDown();
+                    }
+                }
+                target.flush();
+            }
+            catch (final IOException e)
+            {
+                failure = e;
+            }
+            catch (final InterruptedException e)
+            {
+                // abandoned
+            }
+        }
+
+        private void flush() throws IOException
+        {
+            final CountDownLatch flushed = new CountDownLatch(1);
+            queue.add(flushed);
+            // writer thread stops on failure
+            while (failure == null && thread.isAlive())
+            {
+                try
+                {
+                    if (flushed.await(100, TimeUnit.MILLISECONDS))
+                    {
+                        break;
+                    }
+                }
+                catch (final InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            if (failure != null)
+            {
+                throw failure;
+            }
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            queue.add(END);
+            try
+            {
+                thread.join();
+            }
+            catch (final InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            if (closeTarget)
+            {
+                target.close();
+            }
+            if (failure != null)
+            {
+                throw failure;
+            }
+        }
+    }
+
+    private static class ConsoleReporter implements Reporter
+    {
+        // whole test block, otherwise one line per test
+        final boolean full;
+        final ReportWriter writer;
+
+        ConsoleReporter(final boolean full, final PrintStream console)
+        {
+            this.full = full;
+            this.writer = new ReportWriter(console, false, "console");
+        }
+
+        @Override
+        public void report(final TestResult result) throws IOException
+        {
+            if (full)
+            {
+                writer.write(result.console);
+            }
+            else
+            {
+                writer.write(String.format("%-8s\t%s\ttime: \t%.2fms%s%n",
+                    result.verdict,
+                    result.name,
+                    result.mainUsage.wallNanos / 1000000.0d,
+                    result.cached ? "\t(cached)" : "").getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        @Override
+        public void flush() throws IOException
+        {
+            writer.flush();
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            writer.close();
+        }
+    }
+
+    // one JSON object per line, times in nanoseconds, null where not measured
+    private static class JsonLinesReporter implements Reporter
+    {
+        final ReportWriter writer;
+
+        JsonLinesReporter(final Path file) throws IOException
+        {
+            this.writer = new ReportWriter(Files.newOutputStream(file), true, "jsonl");
+        }
+
+        @Override
+        public void report(final TestResult result) throws IOException
+        {
+            final ProcessUsage main = result.mainUsage;
+            final StringBuilder json = new StringBuilder(256);
+            json.append("{\"name\":");
+            quote(json, result.name);
+            json.append(",\"verdict\":\"").append(result.verdict.name()).append('"');
+            json.append(",\"cached\":").append(result.cached);
+            json.append(",\"test_nanos\":").append(result.testNanos);
+            json.append(",\"exit_code\":").append(result.exitCode);
+            json.append(",\"main\":{\"wall_nanos\":").append(main.wallNanos);
+            json.append(",\"cpu_nanos\":").append(main.userNanos < 0 ? null : String.valueOf(main.userNanos + main.systemNanos));
+            json.append(",\"peak_kib\":").append(main.peakRssKiB < 0 ? null : String.valueOf(main.peakRssKiB));
+            json.append(",\"spawn_nanos\":").append(main.spawnNanos);
+            json.append("},\"gen_wall_nanos\":").append(result.generatorUsage.wallNanos);
+            json.append(",\"mismatches\":{");
+            String separator = "";
+            for (final Map.Entry<String, Long> mismatch : result.mismatches.entrySet())
+            {
+                json.append(separator);
+                quote(json, mismatch.getKey());
+                json.append(':').append(mismatch.getValue());
+                separator = ",";
+            }
+            json.append("}}\n");
+            writer.write(json.toString().getBytes(StandardCharsets.UTF_8));
+        }
+
+        private static void quote(final StringBuilder json, final String str)
+        {
+            json.append('"');
+            for (int i = 0; i < str.length(); i++)
+            {
+                final char c = str.charAt(i);
+                switch (c)
+                {
+                    case '"' -> json.append("\\\"");
+                    case '\\' -> json.append("\\\\");
+                    case '\n' -> json.append("\\n");
+                    case '\r' -> json.append("\\r");
+                    case '\t' -> json.append("\\t");
+                    default ->
+                    {
+                        if (c < 0x20)
+                        {
+                            json.append(String.format("\\u%04x", (int) c));
+                        }
+                        else
+                        {
+                            json.append(c);
+                        }
+                    }
+                }
+            }
+            json.append('"');
+        }
+
+        @Override
+        public void flush() throws IOException
+        {
+            writer.flush();
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            writer.close();
+        }
+    }
+
+    // test cases are streamed to side file, suite header with totals is known only at the end
+    private static class JUnitReporter implements Reporter
+    {
+        final Path file;
+        final Path body;
+        final String suite;
+        final ReportWriter writer;
+        int tests;
+        int failures;
+        long testNanos;
+
+        JUnitReporter(final Path file, final String suite) throws IOException
+        {
+            this.file = file;
+            this.body = file.resolveSibling(file.getFileName() + ".part");
+            this.suite = escapeXml(suite);
+            this.writer = new ReportWriter(Files.newOutputStream(body), true, "junit");
+        }
+
+        @Override
+        public void report(final TestResult result) throws IOException
+        {
+            tests++;
+            testNanos += result.testNanos;
+
+            final StringBuilder xml = new StringBuilder(256);
+            xml.append(String.format(Locale.ROOT, "    <testcase classname=\"%s\" name=\"%s\" time=\"%.3f\">%n",
+                suite,
+                escapeXml(result.name),
+                result.testNanos / 1000000000.0d));
+            if (!result.isCorrect())
+            {
+                failures++;
+                xml.append(String.format("      <failure type=\"%s\" message=\"%s\">", result.verdict.name(), result.verdict));
+                xml.append(escapeXml(new String(result.console, StandardCharsets.UTF_8)));
+                xml.append(String.format("</failure>%n"));
+            }
+            xml.append(String.format("    </testcase>%n"));
+            writer.write(xml.toString().getBytes(StandardCharsets.UTF_8));
+        }
+
+        private static String escapeXml(final String str)
+        {
+            final StringBuilder xml = new StringBuilder(str.length());
+            for (int i = 0; i < str.length(); i++)
+            {
+                final char c = str.charAt(i);
+                switch (c)
+                {
+                    case '&' -> xml.append("&amp;");
+                    case '<' -> xml.append("&lt;");
+                    case '>' -> xml.append("&gt;");
+                    case '"' -> xml.append("&quot;");
+                    // other control characters are not allowed even escaped
+                    default -> xml.append(c < 0x20 && c != '\t' && c != '\n' && c != '\r' ? '\uFFFD' : c);
+                }
+            }
+            return xml.toString();
+        }
+
+        @Override
+        public void flush() throws IOException
+        {
+            // report is complete only once closed
+            writer.flush();
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            writer.close();
+            try (var out = Files.newOutputStream(file))
+            {
+                out.write(String.format(Locale.ROOT,
+                    "<?xml version=\"1.0\" encoding=\"UTF-8\"?>%n<testsuites tests=\"%d\" failures=\"%d\" time=\"%.3f\">%n"
+                        + "  <testsuite name=\"%s\" tests=\"%d\" failures=\"%d\" errors=\"0\" skipped=\"0\" time=\"%.3f\">%n",
+                    tests,
+                    failures,
+                    testNanos / 1000000000.0d,
+                    suite,
+                    tests,
+                    failures,
+                    testNanos / 1000000000.0d).getBytes(StandardCharsets.UTF_8));
+                Files.copy(body, out);
+                out.write(String.format("  </testsuite>%n</testsuites>%n").getBytes(StandardCharsets.UTF_8));
+            }
+            Files.delete(body);
+        }
+    }
+
+    // keeps Test Runner alive and re-runs tests affected by changed files, see tr.watch
+    private static class Watcher
+    {
+        private static long debounceMillis = 200;
+
+        final Session session;
+        final Path testFolder;
+        final WatchService service;
+        final Map<WatchKey, Path> directories = new HashMap<>();
+        // change of any main file affects all tests, directories are in-process classpath entries
+        final Set<Path> mainFiles = new HashSet<>();
+        final Set<Path> mainDirectories = new HashSet<>();
+
+        Watcher(final Session session) throws IOException
+        {
+            final String[] mainBase = session.mainBase;
+            this.session = session;
+            this.testFolder = session.testFolder;
+            this.service = testFolder.getFileSystem().newWatchService();
+            register(testFolder);
+
+            final Path cwd = Paths.get(".").toAbsolutePath().normalize();
+            for (int i = 0; i < mainBase.length; i++)
+            {
+                for (final String entry : inProcess && i == 0 ? mainBase[i].split(File.pathSeparator) : new String[] {mainBase[i]})
+                {
+                    if (inProcess && i == 0 && Files.isDirectory(cwd.resolve(entry)))
+                    {
+                        final Path directory = cwd.resolve(entry).normalize();
+                        mainDirectories.add(directory);
+                        registerTree(directory);
+                        continue;
+                    }
+
+                    final Path path = i == 0 && !inProcess ? GeneratorCache.resolveExecutable(entry, cwd) :
+                        GeneratorCache.resolveFile(cwd, entry);
+                    if (path != null)
+                    {
+                        mainFiles.add(path.toAbsolutePath().normalize());
+                        register(path.toAbsolutePath().normalize().getParent());
+                    }
+                }
+            }
+        }
+
+        private void register(final Path directory) throws IOException
+        {
+            if (!directories.containsValue(directory))
+            {
+                directories.put(directory.register(service, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), directory);
+            }
+        }
+
+        private void registerTree(final Path root) throws IOException
+        {
+            try (var paths = Files.walk(root))
+            {
+                for (final Path directory : paths.filter(Files::isDirectory).toList())
+                {
+                    register(directory);
+                }
+            }
+        }
+
+        private void watch(final Map<String, TestDescriptor> tests) throws Exception
+        {
+            session.console.printf("Watching %s and %d main files for changes...%n%n", testFolder, mainFiles.size() + mainDirectories.size());
+            while (true)
+            {
+                // bursts of events (eg. compilation, checkout) are collected until they settle
+                final Set<String> changedTests = new TreeSet<>();
+                final Set<String> changedFiles = new HashSet<>();
+                boolean mainChanged = false;
+                boolean overflow = false;
+                WatchKey key = service.take();
+                do
+                {
+                    final Path directory = directories.get(key);
+                    for (final WatchEvent<?> event : key.pollEvents())
+                    {
+                        if (event.kind() == OVERFLOW || directory == null)
+                        {
+                            overflow = true;
+                            continue;
+                        }
+
+                        final Path path = directory.resolve((Path) event.context());
+                        if (mainFiles.contains(path) || mainDirectories.stream().anyMatch(directory::startsWith))
+                        {
+                            mainChanged = true;
+                            if (event.kind() == ENTRY_CREATE && Files.isDirectory(path) && !mainFiles.contains(path))
+                            {
+                                registerTree(path);
+                            }
+                        }
+                        if (directory.equals(testFolder))
+                        {
+                            collect(path.getFileName().toString(), tests, changedTests, changedFiles);
+                        }
+                    }
+                    if (!key.reset())
+                    {
+                        directories.remove(key);
+                    }
+                    key = service.poll(debounceMillis, TimeUnit.MILLISECONDS);
+                }
+                while (key != null);
+
+                if (overflow)
+                {
+                    // events were lost, whole test folder is listed again
+                    tests.clear();
+                    tests.putAll(discoverTests(testFolder));
+                }
+                for (final String name : changedTests)
+                {
+                    reload(name, tests);
+                }
+
+                final boolean all = mainChanged || overflow;
+                final List<TestDescriptor> affected = tests.values()
+                    .stream()
+                    .filter(test -> all || changedTests.contains(test.name) || readsChangedFile(test, changedFiles))
+                    .sorted(Comparator.comparing(t -> t.name))
+                    .toList();
+                if (affected.isEmpty())
+                {
+                    continue;
+                }
+
+                session.console.printf("Changed %s, running %d of %d tests%n%n",
+                    mainChanged ? "main" : overflow ? "test folder" : affected.stream().map(t -> t.name).collect(Collectors.joining(", ")),
+                    affected.size(),
+                    tests.size());
+                runSuite(session, historyOrder ? orderByHistory(session, affected) : affected);
+                session.console.printf("Watching %s for changes...%n%n", testFolder);
+            }
+        }
+
+        // name.ext affects test name, except files written by its own generators, other files affect tests reading them
+        private static void collect(final String fileName,
+            final Map<String, TestDescriptor> tests,
+            final Set<String> changedTests,
+            final Set<String> changedFiles)
+        {
+            final int lastPeriod = fileName.lastIndexOf('.');
+            final FileExtension extension = lastPeriod <= 0 ? null : FileExtension.get(fileName.substring(lastPeriod + 1));
+            if (extension == null)
+            {
+                changedFiles.add(fileName);
+                return;
+            }
+
+            final String name = fileName.substring(0, lastPeriod);
+            final TestDescriptor test = tests.get(name);
+            if (test != null && (extension == FileExtension.STDIN && test.generate != null ||
+                (extension == FileExtension.STDOUT || extension == FileExtension.STDERR) && test.refsolution != null))
+            {
+                return;
+            }
+            changedTests.add(name);
+        }
+
+        private static boolean readsChangedFile(final TestDescriptor test, final Set<String> changedFiles)
+        {
+            // input files produced by input generator are not inputs of test
+            return test.inputFiles != null && test.generate == null && test.inputFiles.stream().anyMatch(changedFiles::contains);
+        }
+
+        // single test is listed and parsed again, rest of test map stays as it is
+        private void reload(final String name, final Map<String, TestDescriptor> tests) throws IOException
+        {
+            int files = 0;
+            for (final FileExtension extension : FileExtension.fileExtensionsById)
+            {
+                if (Files.exists(testFolder.resolve(name + "." + extension.extension)))
+                {
+                    files |= extension.bit();
+                }
+            }
+
+            if (files == 0)
+            {
+                tests.remove(name);
+            }
+            else
+            {
+                tests.put(name, TestDescriptor.read(name, testFolder, files));
+            }
+        }
+    }
+
+    // stress mode: genin is run with varying $$SEED$$ and main is compared against gen until first mismatch, see tr.stress
+    private static class Stress
+    {
+        static boolean enabled = false;
+        // budget of every test, zero is unbounded
+        static long iterations = 0;
+        static long budgetMillis = 0;
+        static long firstSeed = System.currentTimeMillis();
+        // candidate runs spent on shrinking failing input, zero disables it
+        static int shrinkRuns = 1000;
+
+        final Session session;
+        final int workers;
+        final ExecutorService executor;
+        final Path workRoot;
+        // every worker generates input and reference output into its own directory
+        final BlockingQueue<Path> workDirs = new LinkedBlockingQueue<>();
+
+        Stress(final Session session) throws IOException
+        {
+            this.session = session;
+            this.workers = parallelism > 1 ? parallelism : Runtime.getRuntime().availableProcessors();
+            this.workRoot = Files.createTempDirectory("tr-stress");
+            for (int i = 0; i < workers; i++)
+            {
+                workDirs.add(Files.createDirectory(workRoot.resolve("worker-" + i)));
+            }
+            this.executor = Executors.newFixedThreadPool(workers, r -> {
+                final Thread thread = new Thread(r, "TestRunner-stress");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        // single run of gen and main on generated or given input
+        private static class Outcome
+        {
+            final long seed;
+            final TestResult result;
+            // generator did not finish, main was not run
+            final boolean broken;
+            int referenceExitCode;
+            byte[] input;
+
+            Outcome(final long seed, final TestResult result, final boolean broken)
+            {
+                this.seed = seed;
+                this.result = result;
+                this.broken = broken;
+            }
+
+            private boolean passed()
+            {
+                return !broken && result.isCorrect();
+            }
+        }
+
+        private void run(final List<TestDescriptor> tests) throws Exception
+        {
+            final PrintStream console = session.console;
+            final long wallStart = System.nanoTime();
+            final AtomicLong iterationsDone = new AtomicLong();
+            int stressed = 0;
+            int survived = 0;
+            try
+            {
+                for (final TestDescriptor test : tests)
+                {
+                    // input and output files would be shared by concurrent iterations
+                    if (test.generate == null || test.refsolution == null || test.inputFiles != null || test.outputFiles != null)
+                    {
+                        continue;
+                    }
+
+                    final TestResult result = stress(test, iterationsDone);
+                    session.report(result);
+                    stressed++;
+                    survived += result.isCorrect() ? 1 : 0;
+                }
+            }
+            finally
+            {
+                executor.shutdownNow();
+                Staging.cleanup(workRoot);
+                Staging.awaitCleanups();
+            }
+            for (final Reporter reporter : session.reporters)
+            {
+                reporter.flush();
+            }
+
+            final long wallNanos = System.nanoTime() - wallStart;
+            console.printf("STRESS: %d/%d\n\t\titerations: \t%d\t%.1f/s\n\t\twall: \t%.2fms\n",
+                survived,
+                stressed,
+                iterationsDone.get(),
+                iterationsDone.get() * 1000000000.0d / wallNanos,
+                wallNanos / 1000000.0d);
+            if (stressed < tests.size())
+            {
+                console.printf("\t\tskipped: \t%d tests without genin and gen or with input/output files\n", tests.size() - stressed);
+            }
+        }
+
+        private TestResult stress(final TestDescriptor descriptor, final AtomicLong iterationsDone) throws Exception
+        {
+            final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            final PrintStream out = new PrintStream(buffer, false);
+            final long testStart = System.nanoTime();
+            final ProcessUsage mainUsage = new ProcessUsage();
+            final ProcessUsage generatorUsage = new ProcessUsage();
+
+            out.println("===== STRESS " + descriptor.name + " =====");
+            if (descriptor.description != null)
+            {
+                descriptor.description.forEach(out::println);
+            }
+            out.println();
+            if (descriptor.problem != null)
+            {
+                out.println("Invalid test: " + descriptor.problem);
+                out.println();
+                return finish(TestResult.skipped(descriptor.name, Verdict.ERROR, testStart, generatorUsage), buffer, out);
+            }
+            out.printf("\tseeds: \tfrom %d\tworkers: \t%d%n", firstSeed, workers);
+
+            // workers take seeds in order until budget is spent or any of them fails
+            final long deadline = budgetMillis > 0 ? testStart + budgetMillis * 1000000 : Long.MAX_VALUE;
+            final AtomicLong started = new AtomicLong();
+            final AtomicLong completed = new AtomicLong();
+            final AtomicReference<Outcome> failure = new AtomicReference<>();
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < workers; i++)
+            {
+                futures.add(executor.submit(() -> {
+                    while (failure.get() == null && System.nanoTime() < deadline && !session.cancelled)
+                    {
+                        final long index = started.getAndIncrement();
+                        if (iterations > 0 && index >= iterations)
+                        {
+                            break;
+                        }
+
+                        final Outcome outcome = check(descriptor, firstSeed + index, null);
+                        synchronized (mainUsage)
+                        {
+                            mainUsage.add(outcome.result.mainUsage);
+                            generatorUsage.add(outcome.result.generatorUsage);
+                        }
+                        completed.incrementAndGet();
+                        if (!outcome.passed())
+                        {
+                            failure.compareAndSet(null, outcome);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (final Future<?> future : futures)
+            {
+                try
+                {
+                    future.get();
+                }
+                catch (final ExecutionException e)
+                {
+                    throw e.getCause() instanceof Exception ex ? ex : e;
+                }
+            }
+            final long searchNanos = System.nanoTime() - testStart;
+            iterationsDone.addAndGet(completed.get());
+            out.printf("\titerations: \t%d in %.2fms\t%.1f/s%n",
+                completed.get(),
+                searchNanos / 1000000.0d,
+                completed.get() * 1000000000.0d / searchNanos);
+
+            final Outcome found = failure.get();
+            if (found == null)
+            {
+                out.println();
+                out.printf("%-8s\ttime: \t%.2fms\t%s%n%n%n", Verdict.OK, mainUsage.wallNanos / 1000000.0d, mainUsage.describe());
+                return finish(new TestResult(descriptor.name, Verdict.OK, mainUsage, generatorUsage, System.nanoTime() - testStart), buffer, out);
+            }
+
+            out.println("Failed on seed " + found.seed);
+            out.println();
+            out.write(found.result.console);
+            if (found.broken)
+            {
+                return finish(new TestResult(descriptor.name, found.result.verdict, mainUsage, generatorUsage, System.nanoTime() - testStart),
+                    buffer,
+                    out);
+            }
+
+            final byte[] minimal = shrink(descriptor, found, out);
+            if (!save(descriptor, found, minimal, out))
+            {
+                final TestResult result = new TestResult(descriptor.name, Verdict.ERROR, mainUsage, generatorUsage, System.nanoTime() - testStart);
+                return finish(result, buffer, out);
+            }
+
+            final TestResult result = new TestResult(descriptor.name, found.result.verdict, mainUsage, generatorUsage, System.nanoTime() - testStart);
+            result.exitCode = found.result.exitCode;
+            result.mismatches = found.result.mismatches;
+            return finish(result, buffer, out);
+        }
+
+        private static TestResult finish(final TestResult result, final ByteArrayOutputStream buffer, final PrintStream out)
+        {
+            out.flush();
+            result.console = buffer.toByteArray();
+            return result;
+        }
+
+        // gen and main run in borrowed work directory, input is either given or generated from seed
+        private Outcome check(final TestDescriptor descriptor, final long seed, final byte[] input) throws Exception
+        {
+            final Path testFolder = session.testFolder;
+            final Path dir = workDirs.take();
+            final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            final TestRun run = new TestRun(session, descriptor, new PrintStream(buffer, false));
+            final TestInfo test = run.test;
+            test.seed = seed;
+            try
+            {
+                if (test.prepare(testFolder, run.out))
+                {
+                    return new Outcome(seed, finish(TestResult.skipped(test.name, Verdict.ERROR, run.testStart, run.generatorUsage), buffer, run.out), true);
+                }
+
+                final Path in = dir.resolve("in");
+                if (input == null)
+                {
+                    if (generate(run, test.prepareGenerateInput(testFolder, in), "Input generation") == null)
+                    {
+                        return new Outcome(seed, finish(run.result, buffer, run.out), true);
+                    }
+                }
+                else
+                {
+                    Files.write(in, input);
+                    test.input = in;
+                }
+                final Integer referenceExitCode = generate(run,
+                    test.prepareGenerateOutput(testFolder, dir.resolve("out"), dir.resolve("err")),
+                    "Reference solution generation");
+                if (referenceExitCode == null)
+                {
+                    return new Outcome(seed, finish(run.result, buffer, run.out), true);
+                }
+
+                executeMain(run, testFolder);
+                final Outcome outcome = new Outcome(seed, finish(verify(run, testFolder), buffer, run.out), false);
+                outcome.referenceExitCode = referenceExitCode;
+                if (!outcome.passed())
+                {
+                    outcome.input = Files.readAllBytes(in);
+                }
+                return outcome;
+            }
+            finally
+            {
+                run.release();
+                workDirs.add(dir);
+            }
+        }
+
+        // runs generator to its end, exit code is null if it timeouted or exceeded memory limit
+        private static Integer generate(final TestRun run, final ProcessBuilder pb, final String stage) throws Exception
+        {
+            final TestInfo test = run.test;
+            final ProcessMonitor monitor = ProcessMonitor.launch(pb, false, test.generatorMemoryLimit(), -1);
+            final Process process = monitor.process;
+            test.feedInput(process);
+            final boolean timeouted = test.runProcess(process);
+            run.generatorUsage.add(monitor.finish());
+
+            if (monitor.memoryExceeded || timeouted)
+            {
+                run.out.println(stage + (timeouted ? " timeout" : " exceeded memory limit") + ", stopping...");
+                run.out.println();
+                run.result = TestResult.skipped(test.name, timeouted ? Verdict.TIMEOUT : Verdict.MEMORY_LIMIT, run.testStart, run.generatorUsage);
+                return null;
+            }
+            return process.exitValue();
+        }
+
+        // delta debugging over input lines, candidate fails alike if gen exits alike and main gets same verdict
+        private byte[] shrink(final TestDescriptor descriptor, final Outcome failure, final PrintStream out) throws Exception
+        {
+            final long shrinkStart = System.nanoTime();
+            List<byte[]> lines = splitLines(failure.input);
+            int granularity = 2;
+            int budget = shrinkRuns;
+            int candidateRuns = 0;
+            while (lines.size() >= 2 && budget > 0)
+            {
+                final int chunk = (lines.size() + granularity - 1) / granularity;
+                final List<List<byte[]>> candidates = new ArrayList<>();
+                for (int start = 0; start < lines.size(); start += chunk)
+                {
+                    candidates.add(lines.subList(start, Math.min(lines.size(), start + chunk)));
+                }
+                final int subsets = candidates.size();
+                // complements of two halves are the halves themselves
+                if (subsets > 2)
+                {
+                    for (int start = 0; start < lines.size(); start += chunk)
+                    {
+                        final List<byte[]> complement = new ArrayList<>(lines.subList(0, start));
+                        complement.addAll(lines.subList(Math.min(lines.size(), start + chunk), lines.size()));
+                        candidates.add(complement);
+                    }
+                }
+
+                // candidates are tried in waves of worker count, first failing one wins
+                int failing = -1;
+                for (int wave = 0; wave < candidates.size() && failing == -1 && budget > 0; wave += workers)
+                {
+                    final List<Future<Outcome>> checks = new ArrayList<>();
+                    for (int i = wave; i < Math.min(candidates.size(), wave + workers) && budget > 0; i++, budget--)
+                    {
+                        final byte[] candidate = joinLines(candidates.get(i));
+                        checks.add(executor.submit(() -> check(descriptor, failure.seed, candidate)));
+                    }
+                    for (int i = 0; i < checks.size(); i++)
+                    {
+                        final Outcome outcome;
+                        try
+                        {
+                            outcome = checks.get(i).get();
+                        }
+                        catch (final ExecutionException e)
+                        {
+                            throw e.getCause() instanceof Exception ex ? ex : e;
+                        }
+                        candidateRuns++;
+                        if (failing == -1 && !outcome.broken && outcome.referenceExitCode == failure.referenceExitCode &&
+                            outcome.result.verdict == failure.result.verdict)
+                        {
+                            failing = wave + i;
+                        }
+                    }
+                }
+
+                if (failing != -1)
+                {
+                    lines = new ArrayList<>(candidates.get(failing));
+                    granularity = failing < subsets ? 2 : Math.max(granularity - 1, 2);
+                }
+                else if (granularity >= lines.size())
+                {
+                    break;
+                }
+                else
+                {
+                    granularity = Math.min(granularity * 2, lines.size());
+                }
+            }
+
+            final byte[] minimal = joinLines(lines);
+            out.printf("Shrunk input from %d to %d bytes, %d lines%n\ttime: \t%.2fms\t%d candidate runs%n",
+                failure.input.length,
+                minimal.length,
+                lines.size(),
+                (System.nanoTime() - shrinkStart) / 1000000.0d,
+                candidateRuns);
+            return minimal;
+        }
+
+        // lines keep their terminators, so joining them gives back the input
+        private static List<byte[]> splitLines(final byte[] input)
+        {
+            final List<byte[]> lines = new ArrayList<>();
+            int start = 0;
+            for (int i = 0; i < input.length; i++)
+            {
+                if (input[i] == '\n')
+                {
+                    lines.add(Arrays.copyOfRange(input, start, i + 1));
+                    start = i + 1;
+                }
+            }
+            if (start < input.length)
+            {
+                lines.add(Arrays.copyOfRange(input, start, input.length));
+            }
+            return lines;
+        }
+
+        private static byte[] joinLines(final List<byte[]> lines)
+        {
+            final ByteArrayOutputStream joined = new ByteArrayOutputStream();
+            for (final byte[] line : lines)
+            {
+                joined.writeBytes(line);
+            }
+            return joined.toByteArray();
+        }
+
+        // minimized input becomes regular test with reference output of gen, config files except generators are kept,
+        // not saved if gen does not finish on it as it did in failing run
+        private boolean save(final TestDescriptor descriptor, final Outcome failure, final byte[] input, final PrintStream out) throws Exception
+        {
+            final Path testFolder = session.testFolder;
+            final String name = descriptor.name + "-stress-" + failure.seed;
+            final Path in = testFolder.resolve(name + "." + FileExtension.STDIN);
+            final Path output = testFolder.resolve(name + "." + FileExtension.STDOUT);
+            final Path error = testFolder.resolve(name + "." + FileExtension.STDERR);
+            final Path dir = workDirs.take();
+            final TestInfo test = new TestInfo(descriptor);
+            test.seed = failure.seed;
+            try
+            {
+                test.prepare(testFolder, new PrintStream(OutputStream.nullOutputStream()));
+                Files.write(in, input);
+                test.input = in;
+                final ProcessBuilder pb = test.prepareGenerateOutput(testFolder, output, dir.resolve("err"));
+                final ProcessMonitor monitor = ProcessMonitor.launch(pb, false, test.generatorMemoryLimit(), -1);
+                final boolean timeouted = test.runProcess(monitor.process);
+                monitor.finish();
+
+                final String problem = timeouted ? "timeout" :
+                    monitor.memoryExceeded ? "exceeded memory limit" :
+                    monitor.process.exitValue() != failure.referenceExitCode ? "exit code " + monitor.process.exitValue() + " instead of " + failure.referenceExitCode :
+                    null;
+                if (problem != null)
+                {
+                    out.printf("Reference solution generation on failing input %s, test \"%s\" not saved%n%n%n", problem, name);
+                    Files.deleteIfExists(in);
+                    Files.deleteIfExists(output);
+                    return false;
+                }
+                if (Files.size(dir.resolve("err")) > 0)
+                {
+                    Files.move(dir.resolve("err"), error, StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            finally
+            {
+                if (test.scratch)
+                {
+                    Staging.cleanup(test.runDir);
+                }
+                test.release();
+                Files.deleteIfExists(dir.resolve("err"));
+                workDirs.add(dir);
+            }
+
+            for (final FileExtension extension : FileExtension.fileExtensionsById)
+            {
+                final Path source = descriptor.file(extension);
+                if (source != null && extension.config && extension != FileExtension.INPUT_GEN && extension != FileExtension.OUTPUT_GEN)
+                {
+                    Files.copy(source, testFolder.resolve(name + "." + extension), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            out.printf("Saved %d bytes of failing input as test \"%s\"%n%n%n", input.length, name);
+            return true;
+        }
+    }
+
+    // per-test scratch run directories, input files are linked into them instead of copied where filesystem allows
+    private static class Staging
+    {
+        // reflink needs cp process, which costs more than copying small file
+        private static final long REFLINK_MIN_SIZE = 1 << 20;
+        private static final Queue<Future<?>> cleanups = new ConcurrentLinkedQueue<>();
+        // file store pairs on which method failed once, it is not tried again
+        private static final Set<String> noReflink = ConcurrentHashMap.newKeySet();
+        private static final Set<String> noHardlink = ConcurrentHashMap.newKeySet();
+
+        private static Path root = null;
+        private static boolean hardlinks = false;
+
+        private static Path create(final String testName) throws IOException
+        {
+            return Files.createTempDirectory(root, testName + "-");
+        }
+
+        // returns how file was staged
+        private static String stage(final Path source, final Path target) throws IOException
+        {
+            Files.deleteIfExists(target);
+            final String stores = Files.getFileStore(source) + " > " + Files.getFileStore(target.getParent());
+
+            if (Files.size(source) >= REFLINK_MIN_SIZE && !noReflink.contains(stores))
+            {
+                if (reflink(source, target))
+                {
+                    return "reflinked";
+                }
+                noReflink.add(stores);
+            }
+            if (hardlinks && !noHardlink.contains(stores))
+            {
+                try
+                {
+                    Files.createLink(target, source);
+                    return "linked";
+                }
+                catch (final IOException | UnsupportedOperationException e)
+                {
+                    noHardlink.add(stores);
+                }
+            }
+            Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+            return "copied";
+        }
+
+        // FICLONE is not reachable from Java, GNU cp does it
+        private static boolean reflink(final Path source, final Path target)
+        {
+            try
+            {
+                final Process process = new ProcessBuilder("cp", "--reflink=always", source.toString(), target.toString())
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                    .redirectError(ProcessBuilder.Redirect.DISCARD)
+                    .start();
+                if (process.waitFor() == 0)
+                {
+                    return true;
+                }
+                Files.deleteIfExists(target);
+            }
+            catch (final IOException e)
+            {
+                // no cp
+            }
+            catch (final InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            return false;
+        }
+
+        private static void cleanup(final Path scratch)
+        {
+            cleanups.add(ioExecutor.submit(() -> {
+                try (var paths = Files.walk(scratch))
+                {
+                    for (final Path path : paths.sorted(Comparator.reverseOrder()).toList())
+                    {
+                        Files.deleteIfExists(path);
+                    }
+                }
+                return null;
+            }));
+        }
+
+        private static void awaitCleanups()
+        {
+            Future<?> cleanup;
+            while ((cleanup = cleanups.poll()) != null)
+            {
+                try
+                {
+                    cleanup.get();
+                }
+                catch (final ExecutionException | InterruptedException e)
+                {
+                    System.err.println("WARNING: could not remove scratch directory: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    // generated input kept in memory blocks, whatever exceeds tr.gen_stream_memory goes to spill file
+    private static class SpillBuffer implements Closeable
+    {
+        private static final int BLOCK_SIZE = 1 << 16;
+
+        final List<byte[]> blocks = new ArrayList<>();
+        int lastBlockLength = BLOCK_SIZE;
+        long memoryLength;
+        Path spill;
+        // whole input written out for external checker, which takes input as file
+        Path materialized;
+        long length;
+
+        private void fill(final InputStream source, final OutputStream persist) throws IOException
+        {
+            OutputStream spillStream = null;
+            try
+            {
+                final byte[] chunk = new byte[BLOCK_SIZE];
+                int read;
+                while ((read = source.read(chunk)) != -1)
+                {
+                    if (persist != null)
+                    {
+                        persist.write(chunk, 0, read);
+                    }
+                    length += read;
+
+                    int offset = 0;
+                    while (offset < read && memoryLength < streamMemory)
+                    {
+                        if (lastBlockLength == BLOCK_SIZE)
+                        {
+                            blocks.add(new byte[BLOCK_SIZE]);
+                            lastBlockLength = 0;
+                        }
+                        final int toCopy = (int) Math.min(Math.min(read - offset, BLOCK_SIZE - lastBlockLength), streamMemory - memoryLength);
+                        System.arraycopy(chunk, offset, blocks.get(blocks.size() - 1), lastBlockLength, toCopy);
+                        lastBlockLength += toCopy;
+                        memoryLength += toCopy;
+                        offset += toCopy;
+                    }
+                    if (offset < read)
+                    {
+                        if (spillStream == null)
+                        {
+                            spill = spillDirectory == null ? Files.createTempFile("tr-", ".in") : Files.createTempFile(spillDirectory, "tr-", ".in");
+                            spillStream = new BufferedOutputStream(Files.newOutputStream(spill), BLOCK_SIZE);
+                        }
+                        spillStream.write(chunk, offset, read - offset);
+                    }
+                }
+            }
+            finally
+            {
+                if (spillStream != null)
+                {
+                    spillStream.close();
+                }
+            }
+        }
+
+        // every reader gets whole input from start
+        private InputStream openStream() throws IOException
+        {
+            final List<InputStream> parts = new ArrayList<>();
+            for (int i = 0; i < blocks.size(); i++)
+            {
+                parts.add(new ByteArrayInputStream(blocks.get(i), 0, i == blocks.size() - 1 ? lastBlockLength : BLOCK_SIZE));
+            }
+            if (spill != null)
+            {
+                parts.add(Files.newInputStream(spill));
+            }
+            return new SequenceInputStream(Collections.enumeration(parts));
+        }
+
+        private Path materialize() throws IOException
+        {
+            if (materialized == null)
+            {
+                materialized = spillDirectory == null ? Files.createTempFile("tr-", ".in") : Files.createTempFile(spillDirectory, "tr-", ".in");
+                try (var input = openStream())
+                {
+                    Files.copy(input, materialized, StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            return materialized;
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            blocks.clear();
+            if (spill != null)
+            {
+                Files.deleteIfExists(spill);
+            }
+            if (materialized != null)
+            {
+                Files.deleteIfExists(materialized);
+            }
+        }
+    }
+
+    // one run of tests over one test folder, all its workers share it, daemon runs session per request
+    private static class Session
+    {
+        final Path testFolder;
+        final String[] mainBase;
+        final List<Template> mainTemplates;
+        // summary goes right there, test blocks through reporters
+        final PrintStream console;
+        final List<Reporter> reporters;
+        final History history;
+        final boolean recordHistory;
+        final ResultDatabase resultDatabase;
+        final Baseline baseline;
+        final AtomicInteger failures = new AtomicInteger();
+        volatile boolean cancelled;
+        // summary of current run, runSuite resets them
+        final AtomicLong stagingNanos = new AtomicLong();
+        final AtomicInteger cacheHits = new AtomicInteger();
+        final AtomicInteger cacheMisses = new AtomicInteger();
+        final Path resultFile;
+        // running processes of this session only, supervisor knows processes of all daemon requests
+        private final Map<Process, TestInfo> live = new ConcurrentHashMap<>();
+
+        Session(final Workspace workspace,
+            final String[] mainBase,
+            final PrintStream console,
+            final List<Reporter> reporters,
+            final Path resultFile)
+        {
+            this.testFolder = workspace.testFolder;
+            this.mainBase = mainBase;
+            this.mainTemplates = mainBase == null ? List.of() : Template.compileAll(Arrays.asList(mainBase));
+            this.console = console;
+            this.reporters = reporters;
+            this.history = workspace.history;
+            this.recordHistory = workspace.recordHistory;
+            this.resultDatabase = workspace.resultDatabase;
+            this.baseline = workspace.baseline;
+            this.resultFile = resultFile;
+        }
+
+        private boolean restoreGenerated(final String key, final Function<String, Path> targets) throws IOException
+        {
+            final boolean hit = generatorCache.restore(key, targets);
+            (hit ? cacheHits : cacheMisses).incrementAndGet();
+            return hit;
+        }
+
+        private void report(final TestResult result) throws IOException
+        {
+            for (final Reporter reporter : reporters)
+            {
+                reporter.report(result);
+            }
+            result.console = null;
+            // print stream hides write errors, nobody reads output anymore (eg. daemon client disconnected)
+            if (console.checkError() && !cancelled)
+            {
+                cancel();
+            }
+        }
+
+        // result of finished test, tests killed by fail fast are dropped and count as not run
+        private TestResult recordFailure(final TestRun run)
+        {
+            if (run.test.cancelled)
+            {
+                run.result = null;
+                return null;
+            }
+            if (failFast > 0 && !run.result.isCorrect() && failures.incrementAndGet() == failFast)
+            {
+                cancel();
+            }
+            return run.result;
+        }
+
+        // stop scheduling new tests and kill those in flight, processes of other daemon requests are left alone
+        private void cancel()
+        {
+            cancelled = true;
+            live.forEach((process, test) -> {
+                test.cancelled = true;
+                ProcessSupervisor.killTree(process);
+            });
+        }
+
+        private void track(final Process process, final TestInfo test)
+        {
+            live.put(process, test);
+            // process started after cancel() went through live processes
+            if (cancelled)
+            {
+                test.cancelled = true;
+                ProcessSupervisor.killTree(process);
+            }
+        }
+
+        private void untrack(final Process process)
+        {
+            live.remove(process);
+        }
+
+        private void closeReporters()
+        {
+            for (final Reporter reporter : reporters)
+            {
+                try
+                {
+                    reporter.close();
+                }
+                catch (final IOException e)
+                {
+                    System.err.println("WARNING: could not write report: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    // state of test folder kept across runs, daemon also keeps its parsed tests
+    private static class Workspace
+    {
+        final Path testFolder;
+        final History history;
+        // history is always read for sharding, but written only if asked for by tr.history or tr.order
+        final boolean recordHistory;
+        final ResultDatabase resultDatabase;
+        final Baseline baseline;
+        // daemon runs of one folder take turns
+        final Semaphore lock = new Semaphore(1);
+
+        Map<String, TestDescriptor> tests;
+        long folderModified;
+        long listed;
+        // newest modification time and total size of config files of every test when it was parsed
+        final Map<String, long[]> stamps = new HashMap<>();
+
+        Workspace(final Path testFolder, final Path historyFile) throws IOException
+        {
+            this.testFolder = testFolder;
+            this.history = History.load(historyFile != null ? historyFile : testFolder.resolve(".tr_history"));
+            this.recordHistory = historyFile != null || historyOrder;
+            this.resultDatabase = incremental ? ResultDatabase.load(testFolder.resolveSibling(testFolder.getFileName() + ".trdb")) : null;
+            this.baseline = benchmarkRuns > 0 ? Baseline.load(testFolder.resolve(".tr_baseline")) : null;
+        }
+
+        // whole folder is listed only if some file was added, removed or renamed, otherwise only changed tests are parsed
+        private Map<String, TestDescriptor> discover() throws IOException
+        {
+            final long start = Instant.now().getEpochSecond() * 1000000000L;
+            final long modified = Files.getLastModifiedTime(testFolder).to(TimeUnit.NANOSECONDS);
+            if (tests == null || modified != folderModified || modified >= listed - ResultDatabase.RACY_NANOS)
+            {
+                tests = discoverTests(testFolder);
+                stamps.clear();
+                for (final TestDescriptor test : tests.values())
+                {
+                    stamps.put(test.name, stamp(test));
+                }
+            }
+            else
+            {
+                for (final TestDescriptor test : List.copyOf(tests.values()))
+                {
+                    final long[] stamp = stamp(test);
+                    if (!Arrays.equals(stamp, stamps.get(test.name)) || stamp[0] >= listed - ResultDatabase.RACY_NANOS)
                     {
-                        fd.position(position).read(buffer);
+                        tests.put(test.name, TestDescriptor.read(test.name, testFolder, test.files));
+                        stamps.put(test.name, stamp);
                     }
-                    final byte[] userBytes = Arrays.copyOf(buffer.array(), buffer.position());
+                }
+            }
+            folderModified = modified;
+            listed = start;
+            return tests;
+        }
+
+        private long[] stamp(final TestDescriptor test) throws IOException
+        {
+            final long[] stamp = new long[2];
+            for (final FileExtension extension : FileExtension.fileExtensionsById)
+            {
+                if (extension.config && (test.files & extension.bit()) != 0)
+                {
+                    final BasicFileAttributes attributes =
+                        Files.readAttributes(testFolder.resolve(test.name + "." + extension.extension), BasicFileAttributes.class);
+                    stamp[0] = Math.max(stamp[0], attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS));
+                    stamp[1] += attributes.size();
+                }
+            }
+            return stamp;
+        }
+    }
+
+    // resident Test Runner serving runs over unix domain socket, see tr.daemon
+    private static class Daemon
+    {
+        // request is one key=value per line terminated by empty line, response is console output of run
+        private static final List<String> REQUEST_KEYS =
+            List.of("folder", "main", "file_exts", "console", "report_jsonl", "report_junit", "result_file", "stop");
+        private static final int MAX_REQUEST_LINE = 1 << 16;
+
+        final Path socket;
+        final String console;
+        final Map<Path, Workspace> workspaces = new HashMap<>();
+        final ExecutorService requests = Executors.newCachedThreadPool(r -> {
+            final Thread thread = new Thread(r, "TestRunner-request");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // taken before accept, so that excess clients wait in socket backlog
+        final Semaphore requestSlots;
+        final Set<Session> sessions = ConcurrentHashMap.newKeySet();
+        volatile ServerSocketChannel server;
+
+        Daemon(final Path socket, final String console, final int maxRequests)
+        {
+            this.socket = socket;
+            this.console = console;
+            this.requestSlots = new Semaphore(maxRequests);
+        }
+
+        private void serve() throws IOException, InterruptedException
+        {
+            if (Files.exists(socket))
+            {
+                try
+                {
+                    SocketChannel.open(UnixDomainSocketAddress.of(socket)).close();
+                    throw new IOException("daemon already listens on: " + socket);
+                }
+                catch (final ConnectException e)
+                {
+                    // stale socket of dead daemon
+                    Files.delete(socket);
+                }
+            }
 
-                    buffer.clear();
-                    try (var fd = Files.newByteChannel(reference, StandardOpenOption.READ))
+            try (var server = ServerSocketChannel.open(StandardProtocolFamily.UNIX))
+            {
+                this.server = server;
+                server.bind(UnixDomainSocketAddress.of(socket));
+                socket.toFile().deleteOnExit();
+                Runtime.getRuntime().addShutdownHook(new Thread(this::stop));
+                System.out.println("Listening on " + socket);
+                while (server.isOpen())
+                {
+                    // clients stuck in sending request keep their slots, so stop is checked meanwhile
+                    if (!requestSlots.tryAcquire(100, TimeUnit.MILLISECONDS))
                     {
-                        fd.position(position).read(buffer);
+                        continue;
                     }
-                    final byte[] referenceBytes = Arrays.copyOf(buffer.array(), buffer.position());
+                    final SocketChannel client;
+                    try
+                    {
+                        client = server.accept();
+                    }
+                    catch (final ClosedChannelException e)
+                    {
+                        break; // stopped
+                    }
+                    requests.submit(() -> {
+                        try
+                        {
+                            handle(client);
+                        }
+                        finally
+                        {
+                            requestSlots.release();
+                        }
+                    });
+                }
+            }
+            finally
+            {
+                stop();
+                // cancelled requests still report to their clients
+                requests.shutdown();
+                requests.awaitTermination(10, TimeUnit.SECONDS);
+                Files.deleteIfExists(socket);
+            }
+            System.out.println("Stopped");
+        }
 
-                    compareByteSolutions(userBytes, referenceBytes, fileName);
+        // stops accepting requests and cancels running ones, on stop request or shutdown of JVM
+        private void stop()
+        {
+            try
+            {
+                if (server != null)
+                {
+                    server.close();
+                }
+            }
+            catch (final IOException e)
+            {}
+            sessions.forEach(Session::cancel);
+        }
 
-                    isCorrect = false;
+        private void handle(final SocketChannel client)
+        {
+            try (client; var out = new PrintStream(Channels.newOutputStream(client), false, StandardCharsets.UTF_8))
+            {
+                try
+                {
+                    run(readRequest(client), out);
                 }
+                catch (final IllegalArgumentException | IOException e)
+                {
+                    out.println("ERROR: " + e.getMessage());
+                }
+                catch (final Exception e)
+                {
+                    out.println("ERROR: " + e);
+                    if (debug)
+                    {
+                        e.printStackTrace();
+                    }
+                }
+                out.flush();
+            }
+            catch (final IOException e)
+            {
+                System.err.println("WARNING: could not answer request: " + e.getMessage());
             }
         }
 
-        return isCorrect;
+        private static Map<String, String> readRequest(final SocketChannel client) throws IOException
+        {
+            // byte by byte, nothing past empty line may be consumed
+            final Map<String, String> request = new HashMap<>();
+            final InputStream in = Channels.newInputStream(client);
+            final ByteArrayOutputStream line = new ByteArrayOutputStream();
+            int b;
+            while ((b = in.read()) != -1)
+            {
+                if (b != '\n')
+                {
+                    if (line.size() == MAX_REQUEST_LINE)
+                    {
+                        throw new IllegalArgumentException("request line longer than " + MAX_REQUEST_LINE + " bytes");
+                    }
+                    line.write(b);
+                    continue;
+                }
+                final String entry = line.toString(StandardCharsets.UTF_8).strip();
+                line.reset();
+                if (entry.isEmpty())
+                {
+                    break;
+                }
+
+                final int separator = entry.indexOf('=');
+                if (separator == -1 || !REQUEST_KEYS.contains(entry.substring(0, separator)))
+                {
+                    throw new IllegalArgumentException("unknown request line, expected one of " + REQUEST_KEYS + ": " + entry);
+                }
+                request.put(entry.substring(0, separator), entry.substring(separator + 1));
+            }
+            return request;
+        }
+
+        private void run(final Map<String, String> request, final PrintStream out) throws Exception
+        {
+            if (Boolean.parseBoolean(request.get("stop")))
+            {
+                out.println("Stopping daemon");
+                stop();
+                return;
+            }
+
+            final String folder = request.get("folder");
+            final String main = request.get("main");
+            if (folder == null || main == null)
+            {
+                throw new IllegalArgumentException("request must contain folder and main");
+            }
+            final Path testFolder = Path.of(folder).toAbsolutePath().normalize();
+            if (!Files.isDirectory(testFolder))
+            {
+                throw new IllegalArgumentException("non-directory path in folder: " + testFolder);
+            }
+            // extensions are global to whole process
+            final String fileExtensions = request.get("file_exts");
+            if (fileExtensions != null && !String.join(",", FileExtension.complete(fileExtensions.split(","))).equals(Manifest.extensions()))
+            {
+                throw new IllegalArgumentException("file_exts differ from daemon ones: " + Manifest.extensions());
+            }
+
+            try
+            {
+                Template.compileAll(Arrays.asList(main.split(" ")));
+            }
+            catch (final IllegalArgumentException e)
+            {
+                throw new IllegalArgumentException("malformed main: " + e.getMessage());
+            }
+
+            final Workspace workspace;
+            synchronized (workspaces)
+            {
+                workspace = workspaces.containsKey(testFolder) ? workspaces.get(testFolder) : new Workspace(testFolder, null);
+                workspaces.put(testFolder, workspace);
+            }
+
+            final List<Reporter> reporters = openReporters(request.getOrDefault("console", console),
+                request.get("report_jsonl"),
+                request.get("report_junit"),
+                testFolder,
+                out);
+            final Path resultFile = request.containsKey("result_file") ? Path.of(request.get("result_file")).toAbsolutePath().normalize() : null;
+            final Session session = new Session(workspace, main.split(" "), out, reporters, resultFile);
+            sessions.add(session);
+            try
+            {
+                // runs of one folder share generated files
+                workspace.lock.acquire();
+                try
+                {
+                    List<TestDescriptor> sortedTests = workspace.discover().values().stream().sorted(Comparator.comparing(t -> t.name)).toList();
+                    if (historyOrder)
+                    {
+                        sortedTests = orderByHistory(session, sortedTests);
+                    }
+                    runSuite(session, sortedTests);
+                }
+                finally
+                {
+                    workspace.lock.release();
+                }
+            }
+            finally
+            {
+                sessions.remove(session);
+                session.closeReporters();
+            }
+        }
+
+        private static void connect(final Path socket) throws IOException
+        {
+            final StringBuilder request = new StringBuilder();
+            for (final String key : REQUEST_KEYS)
+            {
+                String value = System.getProperty("tr." + key);
+                if (value != null)
+                {
+                    // daemon resolves relative paths against its own working directory
+                    if (!key.equals("main") && !key.equals("file_exts") && !key.equals("console") && !key.equals("stop"))
+                    {
+                        value = Path.of(value).toAbsolutePath().normalize().toString();
+                    }
+                    request.append(key).append('=').append(value).append('\n');
+                }
+            }
+            request.append('\n');
+
+            try (var channel = SocketChannel.open(UnixDomainSocketAddress.of(socket)))
+            {
+                final OutputStream out = Channels.newOutputStream(channel);
+                out.write(request.toString().getBytes(StandardCharsets.UTF_8));
+                out.flush();
+                Channels.newInputStream(channel).transferTo(System.out);
+                System.out.flush();
+            }
+        }
     }
 
-    private static boolean checkExitCode(final TestInfo test, final int processExitCode) throws IOException
+    private static class TestRun
     {
-        if (test.hasExitCode())
+        final Session session;
+        final TestInfo test;
+        final PrintStream out;
+        long testStart = System.nanoTime();
+        final ProcessUsage generatorUsage = new ProcessUsage();
+        Semaphore runDirLock;
+        long lockWaitNanos;
+
+        // main run, handed over to verification
+        ProcessBuilder mainBuilder;
+        StreamComparator outComparator;
+        StreamComparator errComparator;
+        // stdout of main for external checker
+        Path capturedOutput;
+        ProcessUsage mainUsage;
+        boolean timeouted;
+        boolean memoryExceeded;
+        boolean cpuExceeded;
+        boolean outputFilesExceeded;
+        int exitCode;
+
+        // set once test is finished, later stages skip it
+        TestResult result;
+
+        // pipeline mode only
+        ByteArrayOutputStream console;
+        Exception failure;
+        long activeNanos;
+
+        TestRun(final Session session, final TestDescriptor descriptor, final PrintStream out)
         {
-            final int exitCode = Integer.valueOf(Files.readAllLines(test.exitCode).get(0));
+            this.session = session;
+            this.test = new TestInfo(descriptor);
+            this.test.session = session;
+            this.out = out;
+        }
 
-            if (exitCode != processExitCode)
+        private void release() throws IOException
+        {
+            if (runDirLock != null)
+            {
+                runDirLock.release();
+                runDirLock = null;
+            }
+            if (capturedOutput != null)
+            {
+                Files.deleteIfExists(capturedOutput);
+                capturedOutput = null;
+            }
+            if (test.inputBuffer != null)
+            {
+                test.inputBuffer.close();
+            }
+            if (test.scratch)
+            {
+                Staging.cleanup(test.runDir);
+                test.scratch = false;
+            }
+            test.release();
+        }
+    }
+
+    private static class Pipeline
+    {
+        // marks end of tests in stage queues
+        private static final TestRun END = new TestRun(null, TestDescriptor.ofName("$$END$$"), null);
+
+        final Session session;
+        final int[] depths;
+        final List<Stage> stages = new ArrayList<>();
+
+        Pipeline(final Session session, final int[] depths)
+        {
+            this.session = session;
+            this.depths = depths;
+        }
+
+        private List<TestResult> run(final List<TestDescriptor> tests) throws Exception
+        {
+            final Path testFolder = session.testFolder;
+            final BlockingQueue<TestRun> source = new ArrayBlockingQueue<>(1);
+            final BlockingQueue<TestRun> toGen = new ArrayBlockingQueue<>(depths[0]);
+            final BlockingQueue<TestRun> toMain = new ArrayBlockingQueue<>(depths[1]);
+            final BlockingQueue<TestRun> toVerify = new ArrayBlockingQueue<>(depths[2]);
+            final BlockingQueue<TestRun> sink = new LinkedBlockingQueue<>();
+            stages.add(new Stage("genin", source, toGen, run -> generateInput(run, testFolder)));
+            stages.add(new Stage("gen", toGen, toMain, run -> generateReference(run, testFolder)));
+            stages.add(new Stage("main", toMain, toVerify, run -> executeMain(run, testFolder)));
+            stages.add(new Stage("verify", toVerify, sink, run -> {
+                verify(run, testFolder);
+                session.recordFailure(run);
+            }));
+
+            final ExecutorService executor = Executors.newFixedThreadPool(stages.size() + 1, r -> {
+                final Thread thread = new Thread(r, "TestRunner-pipeline");
+                thread.setDaemon(true);
+                return thread;
+            });
+            try
+            {
+                executor.submit(() -> {
+                    for (final TestDescriptor test : tests)
+                    {
+                        if (session.cancelled)
+                        {
+                            break;
+                        }
+
+                        // buffer whole test block, so it can be printed as one piece
+                        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                        final TestRun run = new TestRun(session, test, new PrintStream(buffer, false));
+                        run.console = buffer;
+                        source.put(run);
+                    }
+                    source.put(END);
+                    return null;
+                });
+                stages.forEach(executor::submit);
+
+                final List<TestResult> results = new ArrayList<>(tests.size());
+                for (TestRun run = sink.take(); run != END; run = sink.take())
+                {
+                    run.release();
+                    if (run.failure != null)
+                    {
+                        throw run.failure;
+                    }
+                    if (run.result == null)
+                    {
+                        continue; // not finished or killed because of fail fast
+                    }
+
+                    run.out.flush();
+                    run.result.console = run.console.toByteArray();
+                    session.report(run.result);
+                    results.add(run.result);
+                }
+                return results;
+            }
+            finally
+            {
+                executor.shutdownNow();
+            }
+        }
+
+        private void printStages(final PrintStream console)
+        {
+            for (final Stage stage : stages)
+            {
+                console.printf("\t\t%s: \tbusy %.2fms, starved %.2fms, blocked %.2fms, run directory %.2fms\n",
+                    stage.name,
+                    stage.busyNanos / 1000000.0d,
+                    stage.starvedNanos / 1000000.0d,
+                    stage.blockedNanos / 1000000.0d,
+                    stage.lockedNanos / 1000000.0d);
+            }
+        }
+
+        private interface StageAction
+        {
+            void accept(TestRun run) throws Exception;
+        }
+
+        private static class Stage implements Callable<Void>
+        {
+            final String name;
+            final BlockingQueue<TestRun> input;
+            final BlockingQueue<TestRun> output;
+            final StageAction action;
+
+            // idle time is split to waiting for previous stage (starved), for next stage (blocked)
+            // and for tests sharing run directory to finish (locked)
+            volatile long busyNanos;
+            volatile long starvedNanos;
+            volatile long blockedNanos;
+            volatile long lockedNanos;
+
+            Stage(final String name, final BlockingQueue<TestRun> input, final BlockingQueue<TestRun> output, final StageAction action)
+            {
+                this.name = name;
+                this.input = input;
+                this.output = output;
+                this.action = action;
+            }
+
+            @Override
+            public Void call() throws Exception
+            {
+                TestRun run;
+                do
+                {
+                    final long takeStart = System.nanoTime();
+                    run = input.take();
+                    final long takeEnd = System.nanoTime();
+                    starvedNanos += takeEnd - takeStart;
+
+                    long locked = 0;
+                    if (run != END && run.failure == null && !run.session.cancelled)
+                    {
+                        // test time counts only stages, not waiting in queues
+                        run.testStart = takeEnd - run.activeNanos;
+                        final long lockWait = run.lockWaitNanos;
+                        try
+                        {
+                            action.accept(run);
+                        }
+                        catch (final Exception e)
+                        {
+                            run.failure = e;
+                        }
+                        run.activeNanos = System.nanoTime() - run.testStart;
+                        locked = run.lockWaitNanos - lockWait;
+                    }
+
+                    final long putStart = System.nanoTime();
+                    busyNanos += putStart - takeEnd - locked;
+                    lockedNanos += locked;
+                    output.put(run);
+                    blockedNanos += System.nanoTime() - putStart;
+                }
+                while (run != END);
+                return null;
+            }
+        }
+    }
+
+    private static class TestResult
+    {
+        final String name;
+        final Verdict verdict;
+        final ProcessUsage mainUsage;
+        final ProcessUsage generatorUsage;
+        final long testNanos;
+        BenchmarkResult benchmark;
+        boolean cached;
+        // null if main did not finish
+        Integer exitCode;
+        // first mismatching byte of stdout, stderr and output files
+        Map<String, Long> mismatches = Map.of();
+
+        // buffered console block of test, until it is reported
+        byte[] console;
+
+        TestResult(final String name,
+            final Verdict verdict,
+            final ProcessUsage mainUsage,
+            final ProcessUsage generatorUsage,
+            final long testNanos)
+        {
+            this.name = name;
+            this.verdict = verdict;
+            this.mainUsage = mainUsage;
+            this.generatorUsage = generatorUsage;
+            this.testNanos = testNanos;
+        }
+
+        private static TestResult skipped(final String name,
+            final Verdict verdict,
+            final long testStart,
+            final ProcessUsage generatorUsage)
+        {
+            return new TestResult(name, verdict, new ProcessUsage(), generatorUsage, System.nanoTime() - testStart);
+        }
+
+        private boolean isCorrect()
+        {
+            return verdict == Verdict.OK;
+        }
+    }
+
+    // argument parsed once into literal and variable segments, rendered for every process of test
+    private static class Template
+    {
+        private enum Variable
+        {
+            TEST_FOLDER,
+            RUN_DIRECTORY,
+            TEST_NAME,
+            WORKER_ID,
+            SEED,
+            SCRATCH_DIR,
+            INPUT_FILES,
+            OUTPUT_FILES
+        }
+
+        final String source;
+        // variable of every segment, null for literal text
+        final Variable[] variables;
+        // literal text, or argument of files variable
+        final String[] texts;
+        // index of file, -1 if files are joined with argument
+        final int[] indexes;
+        final boolean constant;
+
+        private Template(final String source, final List<Variable> variables, final List<String> texts, final List<Integer> indexes)
+        {
+            this.source = source;
+            this.variables = variables.toArray(new Variable[0]);
+            this.texts = texts.toArray(new String[0]);
+            this.indexes = indexes.stream().mapToInt(Integer::intValue).toArray();
+            this.constant = variables.stream().allMatch(Objects::isNull);
+        }
+
+        private static List<Template> compileAll(final List<String> sources)
+        {
+            return sources == null ? null : sources.stream().map(Template::compile).toList();
+        }
+
+        // $$ not followed by variable name and $$ is kept as it is
+        private static Template compile(final String source)
+        {
+            final List<Variable> variables = new ArrayList<>();
+            final List<String> texts = new ArrayList<>();
+            final List<Integer> indexes = new ArrayList<>();
+            int literalStart = 0;
+            int index = source.indexOf("$$");
+            while (index != -1)
+            {
+                final int nameStart = index + 2;
+                int nameEnd = nameStart;
+                while (nameEnd < source.length() && isNameChar(source.charAt(nameEnd)))
+                {
+                    nameEnd++;
+                }
+                final String name = source.substring(nameStart, nameEnd);
+
+                final Variable variable;
+                final String text;
+                final int end;
+                int fileIndex = -1;
+                if (name.startsWith("INPUT_FILES_") || name.startsWith("OUTPUT_FILES_"))
+                {
+                    variable = name.startsWith("INPUT_FILES_") ? Variable.INPUT_FILES : Variable.OUTPUT_FILES;
+                    final int argumentStart = nameStart + variable.name().length() + 1;
+                    end = source.indexOf("$$", argumentStart);
+                    if (end == -1)
+                    {
+                        throw new IllegalArgumentException("unterminated $$" + variable + "_ in \"" + source + "\"");
+                    }
+                    text = source.substring(argumentStart, end);
+                    try
+                    {
+                        fileIndex = Integer.parseInt(text);
+                        if (fileIndex < 0)
+                        {
+                            throw new IllegalArgumentException("negative file index in \"" + source + "\"");
+                        }
+                    }
+                    catch (final NumberFormatException e)
+                    {
+                        if (text.length() > 5)
+                        {
+                            throw new IllegalArgumentException("probably wrong delimiter of files \"" + text + "\" in \"" + source + "\"");
+                        }
+                    }
+                }
+                else if (!name.isEmpty() && source.startsWith("$$", nameEnd))
+                {
+                    try
+                    {
+                        variable = Variable.valueOf(name);
+                    }
+                    catch (final IllegalArgumentException e)
+                    {
+                        throw new IllegalArgumentException("unknown variable $$" + name + "$$ in \"" + source + "\"");
+                    }
+                    if (variable == Variable.INPUT_FILES || variable == Variable.OUTPUT_FILES)
+                    {
+                        throw new IllegalArgumentException("missing argument of $$" + name + "_$$ in \"" + source + "\"");
+                    }
+                    text = null;
+                    end = nameEnd;
+                }
+                else
+                {
+                    index = source.indexOf("$$", nameStart);
+                    continue;
+                }
+
+                if (literalStart < index)
+                {
+                    variables.add(null);
+                    texts.add(source.substring(literalStart, index));
+                    indexes.add(-1);
+                }
+                variables.add(variable);
+                texts.add(text);
+                indexes.add(fileIndex);
+                literalStart = end + 2;
+                index = source.indexOf("$$", literalStart);
+            }
+            if (literalStart < source.length())
             {
-                System.out.printf("Result exit code: %d%nExpected exit code: %d%n%n", exitCode, processExitCode);
-                return false;
+                variables.add(null);
+                texts.add(source.substring(literalStart));
+                indexes.add(-1);
             }
+            return new Template(source, variables, texts, indexes);
         }
-        else if (processExitCode != 0)
+
+        private static boolean isNameChar(final char c)
         {
-            System.out.println("Nonzero exit code: " + processExitCode);
-            System.out.println();
-            return false;
+            return c >= 'A' && c <= 'Z' || c == '_';
         }
-        return true;
-    }
-
-    private static boolean checkStream(final Path solutionPath, final InputStream processStream, final String streamName)
-        throws IOException
-    {
-        final byte[] processBuffer = processStream.readAllBytes();
 
-        if (solutionPath != null)
+        // file indexes must point into infiles and outfiles of test
+        private void checkFiles(final int inputFiles, final int outputFiles)
         {
-            final byte[] solutionBuffer = Files.readAllBytes(solutionPath);
-            return compareByteSolutions(processBuffer, solutionBuffer, streamName);
+            for (int i = 0; i < variables.length; i++)
+            {
+                if (variables[i] == Variable.INPUT_FILES || variables[i] == Variable.OUTPUT_FILES)
+                {
+                    final int count = variables[i] == Variable.INPUT_FILES ? inputFiles : outputFiles;
+                    if (count == 0)
+                    {
+                        throw new IllegalArgumentException("$$" + variables[i] + "_" + texts[i] + "$$ without any file in \"" + source + "\"");
+                    }
+                    if (indexes[i] >= count)
+                    {
+                        throw new IllegalArgumentException("file index " + indexes[i] + " out of " + count + " files in \"" + source + "\"");
+                    }
+                }
+            }
         }
-        else if (processBuffer.length > 0)
+
+        private boolean uses(final Variable variable)
         {
-            final String result = new String(processBuffer);
-            System.out.printf("Result %s should be empty:%n%s%n", streamName, result.substring(0, Math.min(5000, result.length())));
-            return false;
+            return Arrays.asList(variables).contains(variable);
         }
-        return true;
-    }
 
-    private static boolean compareByteSolutions(final byte[] processBuffer, final byte[] solutionBuffer, final String name)
-    {
-        final int firstByteMismatch = Arrays.mismatch(processBuffer, solutionBuffer);
-        if (firstByteMismatch != -1)
+        private String render(final TestInfo test, final Path testFolder) throws IOException
         {
-            final String result = new String(processBuffer);
-            System.out.printf("Result %s:%n%s%n",
-                name,
-                result.length() == 0 ? "<empty>" : escapeInvisibles(result.substring(0, Math.min(1000, result.length()))));
-            System.out.printf("Expected %s:%n%s%n",
-                name,
-                escapeInvisibles(new String(solutionBuffer).substring(0, Math.min(1000, solutionBuffer.length))));
-
-            if (result.length() == 0)
+            if (constant)
             {
-                System.out.println();
-                return false;
+                return source;
             }
 
-            if (firstByteMismatch == 0 && result.length() == 1)
-            {
-                System.out.printf("Mismatch in only character of result %s:%n| %s |%n%n",
-                    name,
-                    escapeInvisibles(result.substring(firstByteMismatch, firstByteMismatch + 1)));
-            }
-            else if (firstByteMismatch >= result.length())
+            final StringBuilder builder = test.renderBuffer;
+            builder.setLength(0);
+            for (int i = 0; i < variables.length; i++)
             {
-                System.out.printf("Mismatch after end of result %s%n%n", name);
+                if (variables[i] == null)
+                {
+                    builder.append(texts[i]);
+                    continue;
+                }
+                switch (variables[i])
+                {
+                    case TEST_FOLDER -> builder.append(testFolder);
+                    case RUN_DIRECTORY -> builder.append(test.runDir);
+                    case TEST_NAME -> builder.append(test.name);
+                    case WORKER_ID -> builder.append(test.workerId);
+                    case SEED -> builder.append(test.seed);
+                    case SCRATCH_DIR -> builder.append(test.scratchDir());
+                    case INPUT_FILES -> appendFiles(builder, test.inFilesStr, i);
+                    case OUTPUT_FILES -> appendFiles(builder, test.outFilesStr, i);
+                }
             }
-            else
+
+            final String rendered = builder.toString();
+            if (debug)
             {
-                System.out.printf("Mismatch at %d of result %s:%n%s %s <> %s <> %s %s%n%n",
-                    firstByteMismatch,
-                    name,
-                    firstByteMismatch < 1 + DUMP_AROUND_SIZE ? "|" : "...",
-                    escapeInvisibles(result.substring(Math.max(firstByteMismatch - DUMP_AROUND_SIZE, 0), firstByteMismatch)),
-                    escapeInvisibles(result.substring(firstByteMismatch, firstByteMismatch + 1)),
-                    escapeInvisibles(
-                        result.substring(firstByteMismatch + 1, Math.min(firstByteMismatch + 1 + DUMP_AROUND_SIZE, result.length()))),
-                    Math.min(firstByteMismatch + 1 + DUMP_AROUND_SIZE, result.length()) >= result.length() ? "|" : "...");
+                System.err.println("DEBUG: expansion: " + source + " $$ " + rendered);
             }
-            return false;
+            return rendered;
         }
-        return true;
-    }
 
-    private static String escapeInvisibles(final String escape)
-    {
-        final int len = escape.length();
-        final StringBuilder sb = new StringBuilder(Math.max(1005 * len / 1000, len));
-        for (int i = 0; i < len; i++)
+        private void appendFiles(final StringBuilder builder, final List<String> files, final int segment)
         {
-            final char c = escape.charAt(i);
-            switch (c)
+            // main base is shared by all tests, so it may point past files of this one
+            if (indexes[segment] >= files.size() || files.isEmpty())
             {
-                case '\b':
-                    sb.append('\\');
-                    sb.append('b');
-                    break;
-
-                case '\f':
-                    sb.append('\\');
-                    sb.append('f');
-                    break;
-
-                case '\n':
-                    sb.append('\\');
-                    sb.append('n');
-                    break;
-
-                case '\r':
-                    sb.append('\\');
-                    sb.append('r');
-                    break;
-
-                case '\t':
-                    sb.append('\\');
-                    sb.append('t');
-                    break;
-
-                default:
-                    if (c < ' ')
-                    {
-                        sb.append("\\0x");
-                        sb.append(Integer.toHexString(c));
-                    }
-                    else
+                builder.append("$$").append(variables[segment]).append('_').append(texts[segment]).append("$$");
+            }
+            else if (indexes[segment] != -1)
+            {
+                builder.append(files.get(indexes[segment]));
+            }
+            else
+            {
+                for (int i = 0; i < files.size(); i++)
+                {
+                    if (i > 0)
                     {
-                        sb.append(c);
+                        builder.append(texts[segment]);
                     }
-                    break;
+                    builder.append(files.get(i));
+                }
             }
         }
-        return sb.toString();
     }
 
-    private static class TestInfo
+    private static class TestDescriptor
     {
-        // config
         final String name;
-        Path input;
-        Path output;
-        Path error;
-        Path args;
-        Path exitCode;
-        Path generate;
-        Path refsolution;
-        Path timeout;
-        Path runDir;
-        Path inputFilesPath;
-        Path outputFilesPath;
-        Path environmentMap;
-        Path description;
-
-        // runtime
-        int timeoutSeconds;
-        Map<String, String> environment = new HashMap<>();
-        List<Path> inFiles;
-        List<Path> outFiles;
-        List<String> inFilesStr;
-        List<String> outFilesStr;
-
-        public TestInfo(final String name)
+        final Path folder;
+        // attached files, bit per file extension id
+        final int files;
+
+        // parsed config files, null if not attached
+        final List<String> args;
+        final Integer exitCode;
+        final List<String> generate;
+        final List<String> refsolution;
+        final Long timeoutMillis;
+        final Long cpuLimitMillis;
+        final String runDir;
+        final List<String> inputFiles;
+        final List<String> outputFiles;
+        final List<String> environmentMap;
+        final List<String> description;
+        final Long memoryLimit;
+        final Long outputLimit;
+        // built-in checker, or command of external one
+        final Checker checker;
+        final List<String> checkerCommand;
+        // config lines compiled into templates, null if not attached
+        final List<Template> argTemplates;
+        final List<Template> generateTemplates;
+        final List<Template> refsolutionTemplates;
+        final List<Template> checkerTemplates;
+        // values of environment map, keys are taken as they are
+        final List<Template> environmentTemplates;
+
+        // reason why config files could not be parsed, reported when test is run
+        final String problem;
+
+        private TestDescriptor(final String name, final Path folder, final int files, final Map<FileExtension, String> contents)
         {
             this.name = name;
+            this.folder = folder;
+            this.files = files;
+
+            final List<String> problems = new ArrayList<>();
+            args = lines(contents.get(FileExtension.ARGS));
+            exitCode = parseInt(contents.get(FileExtension.EXIT_CODE), FileExtension.EXIT_CODE, problems);
+            generate = lines(contents.get(FileExtension.INPUT_GEN));
+            refsolution = lines(contents.get(FileExtension.OUTPUT_GEN));
+            timeoutMillis = parseDuration(contents.get(FileExtension.TIMEOUT), FileExtension.TIMEOUT, problems);
+            cpuLimitMillis = parseDuration(contents.get(FileExtension.CPU_TIME), FileExtension.CPU_TIME, problems);
+            final List<String> runDirLines = lines(contents.get(FileExtension.RUN_DIRECTORY));
+            if (runDirLines != null && runDirLines.isEmpty())
+            {
+                problems.add("empty " + FileExtension.RUN_DIRECTORY.description);
+            }
+            runDir = runDirLines == null || runDirLines.isEmpty() ? null : runDirLines.get(0);
+            final List<String> inputFileLines = lines(contents.get(FileExtension.IN_FILES));
+            inputFiles = inputFileLines == null ? null : inputFileLines.stream().filter(not(String::isBlank)).toList();
+            final List<String> outputFileLines = lines(contents.get(FileExtension.OUT_FILES));
+            outputFiles = outputFileLines == null ? null :
+                outputFileLines.stream().filter(not(String::isBlank)).filter(s -> !s.startsWith("//")).toList();
+            environmentMap = lines(contents.get(FileExtension.ENVIRONMENT_MAP));
+            description = lines(contents.get(FileExtension.DESCRIPTION));
+            memoryLimit = parseSize(contents.get(FileExtension.MEMORY_LIMIT), FileExtension.MEMORY_LIMIT, problems);
+            outputLimit = parseSize(contents.get(FileExtension.OUTPUT_LIMIT), FileExtension.OUTPUT_LIMIT, problems);
+            final List<String> checkerLines = lines(contents.get(FileExtension.CHECKER));
+            Checker parsedChecker = null;
+            if (checkerLines != null && (checkerLines.isEmpty() || checkerLines.get(0).isBlank()))
+            {
+                problems.add("empty " + FileExtension.CHECKER.description);
+            }
+            else if (checkerLines != null)
+            {
+                try
+                {
+                    parsedChecker = Checker.parse(checkerLines.get(0));
+                }
+                catch (final NumberFormatException e)
+                {
+                    problems.add("unparsable " + FileExtension.CHECKER.description + ": \"" + checkerLines.get(0).strip() + "\"");
+                }
+            }
+            checker = parsedChecker;
+            checkerCommand = checkerLines != null && !checkerLines.isEmpty() && parsedChecker == null && problems.isEmpty() ?
+                checkerLines.stream().filter(not(String::isBlank)).toList() : null;
+
+            argTemplates = compile(args, FileExtension.ARGS, problems);
+            generateTemplates = compile(generate, FileExtension.INPUT_GEN, problems);
+            refsolutionTemplates = compile(refsolution, FileExtension.OUTPUT_GEN, problems);
+            checkerTemplates = compile(checkerCommand, FileExtension.CHECKER, problems);
+            if (environmentMap != null && environmentMap.size() % 2 != 0)
+            {
+                problems.add("missing value of last variable in " + FileExtension.ENVIRONMENT_MAP.description);
+            }
+            environmentTemplates = compile(environmentMap == null ? null :
+                IntStream.range(0, environmentMap.size() / 2).mapToObj(i -> environmentMap.get(2 * i + 1)).toList(),
+                FileExtension.ENVIRONMENT_MAP,
+                problems);
+            problem = problems.isEmpty() ? null : String.join(", ", problems);
         }
 
-        private static TestInfo ofName(final String name)
+        private static TestDescriptor ofName(final String name)
         {
             Objects.requireNonNull(name);
-            return new TestInfo(name);
+            return new TestDescriptor(name, Paths.get(".").toAbsolutePath().normalize(), 0, Map.of());
         }
 
-        private void attachInput(final Path input)
+        private static TestDescriptor read(final String name, final Path folder, final int files) throws IOException
         {
-            this.input = input;
+            final Map<FileExtension, String> contents = new HashMap<>();
+            for (final FileExtension extension : FileExtension.fileExtensionsById)
+            {
+                if (extension.config && (files & extension.bit()) != 0)
+                {
+                    final Path path = folder.resolve(name + "." + extension.extension);
+                    contents.put(extension, manifest != null ? manifest.read(path) : Files.readString(path));
+                }
+            }
+            return new TestDescriptor(name, folder, files, contents);
         }
 
-        private void attachOutput(final Path output)
+        private static List<String> lines(final String content)
         {
-            this.output = output;
+            return content == null ? null : content.lines().toList();
         }
 
-        private void attachError(final Path error)
+        private List<Template> compile(final List<String> sources, final FileExtension extension, final List<String> problems)
         {
-            this.error = error;
+            try
+            {
+                final List<Template> templates = Template.compileAll(sources);
+                if (templates != null)
+                {
+                    for (final Template template : templates)
+                    {
+                        template.checkFiles(inputFiles == null ? 0 : inputFiles.size(), outputFiles == null ? 0 : outputFiles.size());
+                    }
+                }
+                return templates;
+            }
+            catch (final IllegalArgumentException e)
+            {
+                problems.add("malformed " + extension.description + ": " + e.getMessage());
+                return null;
+            }
         }
 
-        private void attachArguments(final Path args)
+        private static Integer parseInt(final String content, final FileExtension extension, final List<String> problems)
         {
-            this.args = args;
-        }
+            if (content == null)
+            {
+                return null;
+            }
 
-        private void attachExitCode(final Path exitCode)
-        {
-            this.exitCode = exitCode;
+            final String firstLine = content.lines().findFirst().orElse("").strip();
+            try
+            {
+                return Integer.valueOf(firstLine);
+            }
+            catch (final NumberFormatException e)
+            {
+                problems.add("unparsable " + extension.description + ": \"" + firstLine + "\"");
+                return null;
+            }
         }
 
-        private void attachGenerate(final Path generate)
+        private static Long parseDuration(final String content, final FileExtension extension, final List<String> problems)
         {
-            this.generate = generate;
-        }
+            if (content == null)
+            {
+                return null;
+            }
 
-        private void attachRefSolution(final Path refsolution)
-        {
-            this.refsolution = refsolution;
+            final String firstLine = content.lines().findFirst().orElse("").strip();
+            try
+            {
+                return ProcessSupervisor.parseDuration(firstLine);
+            }
+            catch (final NumberFormatException e)
+            {
+                problems.add("unparsable " + extension.description + ": \"" + firstLine + "\"");
+                return null;
+            }
         }
 
-        private void attachTimeout(final Path timeout)
+        private static Long parseSize(final String content, final FileExtension extension, final List<String> problems)
         {
-            this.timeout = timeout;
-        }
+            if (content == null)
+            {
+                return null;
+            }
 
-        private void attachRunDir(final Path runDir)
-        {
-            this.runDir = runDir;
+            final String firstLine = content.lines().findFirst().orElse("").strip();
+            try
+            {
+                return MemoryLimit.parseSize(firstLine);
+            }
+            catch (final NumberFormatException e)
+            {
+                problems.add("unparsable " + extension.description + ": \"" + firstLine + "\"");
+                return null;
+            }
         }
 
-        private void attachInputFiles(final Path inputFiles)
+        private Path file(final FileExtension extension)
         {
-            this.inputFilesPath = inputFiles;
+            return (files & extension.bit()) != 0 ? folder.resolve(name + "." + extension.extension) : null;
         }
+    }
 
-        private void attachOutputFiles(final Path outputFiles)
-        {
-            this.outputFilesPath = outputFiles;
-        }
+    private static class TestInfo
+    {
+        // ids of running tests, lowest free one is taken
+        private static final BitSet workerIds = new BitSet();
 
-        private void attachEnvironmentMap(final Path environmentMap)
-        {
-            this.environmentMap = environmentMap;
-        }
+        final TestDescriptor descriptor;
+        final String name;
+
+        // runtime
+        Path input;
+        Path output;
+        Path error;
+        Path runDir;
+        // generated input kept off test folder, see tr.gen_stream
+        SpillBuffer inputBuffer;
+        Path streamedInput;
+        // run directory is private to this test, see tr.stage
+        boolean scratch;
+        // varied by stress mode, see tr.stress
+        long seed;
+        // distinct among tests running at the same time, see $$WORKER_ID$$
+        int workerId = -1;
+        // created for $$SCRATCH_DIR$$ if run directory is not private
+        Path privateDir;
+        final StringBuilder renderBuffer = new StringBuilder();
+        long timeoutMillis;
+        long cpuLimitMillis;
+        long memoryLimit;
+        long outputLimit;
+        Map<String, String> environment = new HashMap<>();
+        List<Path> inFiles;
+        List<Path> outFiles;
+        List<String> inFilesStr;
+        List<String> outFilesStr;
+        Map<String, Long> mismatches = new LinkedHashMap<>();
+        // session whose fail fast kills processes of this test, none outside of test runs
+        Session session;
+        volatile boolean cancelled;
 
-        private void attachDescription(final Path description)
+        TestInfo(final TestDescriptor descriptor)
         {
-            this.description = description;
+            this.descriptor = descriptor;
+            this.name = descriptor.name;
+            this.input = descriptor.file(FileExtension.STDIN);
+            this.output = descriptor.file(FileExtension.STDOUT);
+            this.error = descriptor.file(FileExtension.STDERR);
         }
 
         private void printDescription(final PrintStream out) throws Exception
         {
-            if (description != null)
+            if (descriptor.description != null)
             {
-                Files.readAllLines(description).forEach(out::println);
+                descriptor.description.forEach(out::println);
             }
-            System.out.println();
+            out.println();
         }
 
-        private boolean prepare(final Path testFolder) throws Exception
+        private boolean prepare(final Path testFolder, final PrintStream out) throws Exception
         {
-            timeoutSeconds = timeout != null ? Integer.valueOf(Files.readString(timeout)) : mainTimeout;
+            if (descriptor.problem != null)
+            {
+                out.println("Invalid test: " + descriptor.problem);
+                return true;
+            }
+            synchronized (workerIds)
+            {
+                workerId = workerIds.nextClearBit(0);
+                workerIds.set(workerId);
+            }
+
+            timeoutMillis = descriptor.timeoutMillis != null ? descriptor.timeoutMillis : mainTimeoutMillis;
+            cpuLimitMillis = descriptor.cpuLimitMillis != null ? descriptor.cpuLimitMillis : mainCpuLimitMillis;
+            memoryLimit = descriptor.memoryLimit != null ? descriptor.memoryLimit : mainMemoryLimit;
+            outputLimit = descriptor.outputLimit != null ? descriptor.outputLimit : mainOutputLimit;
+            if (memoryLimit > 0 && inProcess)
+            {
+                out.println("Memory limit is not enforced for in-process main");
+            }
 
             boolean requestGap = false;
-            if (runDir != null)
+            if (descriptor.runDir != null)
             {
                 // transform run directory
-                runDir = Path.of(Files.readAllLines(runDir).get(0)).toAbsolutePath().normalize();
+                runDir = Path.of(descriptor.runDir).toAbsolutePath().normalize();
 
                 requestGap = true;
-                System.out.println("Running in directory: " + runDir.toString());
+                out.println("Running in directory: " + runDir.toString());
             }
             else
             {
                 // set to current dir
                 runDir = Paths.get(".").toAbsolutePath().normalize();
             }
+            if (Staging.root != null)
+            {
+                runDir = Staging.create(name);
+                scratch = true;
+                requestGap = true;
+                out.println("Running in scratch directory: " + runDir.toString());
+            }
 
-            if (inputFilesPath != null)
+            if (descriptor.inputFiles != null)
             {
-                inFiles = Files.readAllLines(inputFilesPath)
+                inFiles = descriptor.inputFiles
                     .stream()
-                    .filter(not(String::isBlank))
                     .map(f -> testFolder.resolve(f))
                     .map(Path::toAbsolutePath)
                     .map(Path::normalize)
@@ -626,12 +7593,10 @@ public class TestRunner
                 inFiles = List.of();
                 inFilesStr = List.of();
             }
-            if (outputFilesPath != null)
+            if (descriptor.outputFiles != null)
             {
-                outFiles = Files.readAllLines(outputFilesPath)
+                outFiles = descriptor.outputFiles
                     .stream()
-                    .filter(not(String::isBlank))
-                    .filter(s -> !s.startsWith("//"))
                     .map(f -> runDir.resolve(f))
                     .map(Path::toAbsolutePath)
                     .map(Path::normalize)
@@ -644,31 +7609,31 @@ public class TestRunner
                 outFilesStr = List.of();
             }
 
-            if (environmentMap != null)
+            if (descriptor.environmentMap != null)
             {
-                final List<String> envMap = Files.readAllLines(environmentMap);
+                final List<String> envMap = descriptor.environmentMap;
 
                 requestGap = true;
-                System.out.println("Running with additional environment variables: ");
+                out.println("Running with additional environment variables: ");
                 for (int i = 0; i < envMap.size(); i += 2)
                 {
                     final String key = envMap.get(i);
-                    final String value = expandVariables(envMap.get(i + 1), testFolder);
+                    final String value = descriptor.environmentTemplates.get(i / 2).render(this, testFolder);
 
                     if (key.isBlank())
                     {
-                        System.out.println("\t Empty key on line: " + i + ", skipping...");
+                        out.println("\t Empty key on line: " + i + ", skipping...");
                         return true;
                     }
 
                     environment.put(key, value);
-                    System.out.println("\t" + key + " = " + value);
+                    out.println("\t" + key + " = " + value);
                 }
             }
 
             if (requestGap)
             {
-                System.out.println();
+                out.println();
             }
 
             return false;
@@ -678,12 +7643,28 @@ public class TestRunner
         {
             final Path genIn = testFolder.resolve(name + "." + FileExtension.STDIN);
 
-            final ProcessBuilder pb = new ProcessBuilder(expandVariables(Files.readAllLines(generate), testFolder));
+            if (streamInput)
+            {
+                final ProcessBuilder pb = prepareGenerateInput(testFolder, null);
+                inputBuffer = new SpillBuffer();
+                streamedInput = genIn;
+                return pb;
+            }
+            return prepareGenerateInput(testFolder, genIn);
+        }
+
+        // input is generated into given file, or read from process if there is none
+        public ProcessBuilder prepareGenerateInput(final Path testFolder, final Path genIn) throws Exception
+        {
+            final ProcessBuilder pb = new ProcessBuilder(render(descriptor.generateTemplates, testFolder));
 
-            pb.redirectOutput(genIn.toFile());
             pb.directory(runDir.toFile());
             pb.environment().putAll(environment);
 
+            if (genIn != null)
+            {
+                pb.redirectOutput(genIn.toFile());
+            }
             input = genIn;
 
             return pb;
@@ -691,10 +7672,14 @@ public class TestRunner
 
         public ProcessBuilder prepareGenerateOutput(final Path testFolder) throws Exception
         {
-            final Path genOut = testFolder.resolve(name + "." + FileExtension.STDOUT);
-            final Path genErr = testFolder.resolve(name + "." + FileExtension.STDERR);
+            return prepareGenerateOutput(testFolder,
+                testFolder.resolve(name + "." + FileExtension.STDOUT),
+                testFolder.resolve(name + "." + FileExtension.STDERR));
+        }
 
-            final ProcessBuilder pb = new ProcessBuilder(expandVariables(Files.readAllLines(refsolution), testFolder));
+        public ProcessBuilder prepareGenerateOutput(final Path testFolder, final Path genOut, final Path genErr) throws Exception
+        {
+            final ProcessBuilder pb = new ProcessBuilder(render(descriptor.refsolutionTemplates, testFolder));
             if (input != null)
             {
                 pb.redirectInput(input.toFile());
@@ -710,14 +7695,32 @@ public class TestRunner
             return pb;
         }
 
-        public ProcessBuilder prepareMain(final Path testFolder, final String[] mainBase) throws Exception
+        // checker gets paths of input, result and expected output appended to its arguments
+        public ProcessBuilder prepareChecker(final Path testFolder, final Path result, final Path report) throws Exception
+        {
+            final List<String> command = render(descriptor.checkerTemplates, testFolder);
+            // streamed input is complete by now, persisted copy is used if there is one
+            final Path checkerInput = input != null || inputBuffer == null ? input : persistInput ? streamedInput : inputBuffer.materialize();
+            command.add(checkerInput == null ? NULL_FILE : checkerInput.toString());
+            command.add(result.toString());
+            command.add(output == null ? NULL_FILE : output.toString());
+
+            final ProcessBuilder pb = new ProcessBuilder(command);
+            pb.redirectOutput(report.toFile());
+            pb.redirectErrorStream(true);
+            pb.directory(runDir.toFile());
+            pb.environment().putAll(environment);
+
+            return pb;
+        }
+
+        public ProcessBuilder prepareMain(final Path testFolder, final List<Template> mainBase) throws Exception
         {
-            final List<String> mainArgs = new ArrayList<>(Arrays.asList(mainBase));
+            final List<String> mainArgs = render(mainBase, testFolder);
             if (hasArguments())
             {
-                mainArgs.addAll(Files.readAllLines(args));
+                mainArgs.addAll(render(descriptor.argTemplates, testFolder));
             }
-            expandVariables(mainArgs, testFolder);
 
             if (debug)
             {
@@ -737,156 +7740,178 @@ public class TestRunner
 
         public boolean runProcess(final Process process) throws Exception
         {
-            runningProcess.set(process);
-            if (timeoutSeconds != -1 && !process.waitFor(timeoutSeconds, TimeUnit.SECONDS))
+            if (session != null)
             {
-                process.destroy();
-                runningProcess.set(null);
-                return true;
+                session.track(process, this);
             }
-            else
+            try
             {
-                process.waitFor();
-                runningProcess.set(null);
+                return ProcessSupervisor.supervise(process, timeoutMillis).get();
             }
-            return false;
+            catch (final ExecutionException e)
+            {
+                throw e.getCause() instanceof Exception ex ? ex : e;
+            }
+            finally
+            {
+                if (session != null)
+                {
+                    session.untrack(process);
+                }
+            }
+        }
+
+        private List<String> render(final List<Template> templates, final Path testFolder) throws IOException
+        {
+            final List<String> rendered = new ArrayList<>(templates.size());
+            for (final Template template : templates)
+            {
+                rendered.add(template.render(this, testFolder));
+            }
+            return rendered;
         }
 
-        private List<String> expandVariables(final List<String> args, final Path testFolder) throws Exception
+        // private directory of test, removed with it
+        private Path scratchDir() throws IOException
         {
-            for (int i = 0; i < args.size(); i++)
+            if (scratch)
+            {
+                return runDir;
+            }
+            if (privateDir == null)
             {
-                args.set(i, expandVariables(args.get(i), testFolder));
+                privateDir = Files.createTempDirectory("tr-" + name);
             }
-            return args;
+            return privateDir;
         }
 
-        private String expandVariables(String str, Path testFolder) throws Exception
+        // main copies input files itself if it gets their paths
+        private boolean passesInputFiles(final List<Template> mainBase)
         {
-            final String strOld = str;
-            str = str.replace("$$TEST_FOLDER$$", testFolder.toString());
-            str = str.replace("$$RUN_DIRECTORY$$", runDir.toString());
+            return mainBase.stream().anyMatch(t -> t.uses(Template.Variable.INPUT_FILES)) ||
+                hasArguments() && descriptor.argTemplates.stream().anyMatch(t -> t.uses(Template.Variable.INPUT_FILES));
+        }
 
-            if (inFiles.isEmpty() && outFiles.isEmpty())
+        private void release()
+        {
+            if (workerId != -1)
             {
-                if (debug && !str.equals(strOld))
+                synchronized (workerIds)
                 {
-                    System.err.println("DEBUG: expansion: " + strOld + " $$ " + str);
+                    workerIds.clear(workerId);
                 }
-                return str;
+                workerId = -1;
             }
-
-            int index = 0;
-            while (index < str.length())
+            if (privateDir != null)
             {
-                final int locIn = inFiles.isEmpty() ? -1 : str.indexOf("$$INPUT_FILES_", index);
-                final int locOut = outFiles.isEmpty() ? -1 : str.indexOf("$$OUTPUT_FILES_", index);
+                Staging.cleanup(privateDir);
+                privateDir = null;
+            }
+        }
 
-                if (locIn == -1 && locOut == -1) // found nothing -> end
-                {
-                    break;
-                }
+        private long generatorMemoryLimit()
+        {
+            return generatorMemoryLimit ? memoryLimit : -1;
+        }
 
-                final int loc = locIn == -1 ? locOut : (locOut == -1 ? locIn : Math.min(locIn, locOut));
-                final List<String> files = loc == locIn ? inFilesStr : outFilesStr;
-                final int locArg = loc + (loc == locIn ? "$$INPUT_FILES_".length() : "$$OUTPUT_FILES_".length());
+        private boolean hasInput()
+        {
+            return input != null || inputBuffer != null;
+        }
 
-                int locEnd = str.indexOf("$$", locArg);
-                if (locEnd == -1)
+        // stdin of process is redirected from input file, streamed from generated input, or empty
+        private void feedInput(final Process process) throws IOException
+        {
+            if (inputBuffer == null)
+            {
+                if (input == null)
                 {
-                    break;
+                    process.getOutputStream().close();
                 }
+                return;
+            }
 
-                index = locEnd + 2;
-                String arg = str.substring(locArg, locEnd);
-
-                try
+            ioExecutor.submit(() -> {
+                try (var source = inputBuffer.openStream(); var stdin = process.getOutputStream())
                 {
-                    arg = files.get(Integer.parseInt(arg));
+                    source.transferTo(stdin);
                 }
-                catch (NumberFormatException e)
+                catch (final IOException e)
                 {
-                    if (arg.length() > 5)
-                    {
-                        System.err.println("WARNING: probably wrong delimiter for files? file argument: " + str.substring(loc, index));
-                    }
-                    arg = String.join(arg, files);
+                    // process exited without reading whole input
                 }
-
-                str = str.substring(0, loc) + arg + str.substring(index);
-            }
-
-            if (debug && !str.equals(strOld))
-            {
-                System.err.println("DEBUG: expansion: " + strOld + " $$ " + str);
-            }
-            return str;
-        }
-
-        private boolean hasInput()
-        {
-            return input != null;
+                return null;
+            });
         }
 
         private boolean hasArguments()
         {
-            return args != null;
+            return descriptor.args != null;
         }
 
         private boolean hasExitCode()
         {
-            return exitCode != null;
+            return descriptor.exitCode != null;
         }
 
         private boolean hasGenerate()
         {
-            return generate != null;
+            return descriptor.generate != null;
         }
 
         private boolean hasRefSolution()
         {
-            return refsolution != null;
+            return descriptor.refsolution != null;
         }
 
         private boolean hasInputFiles()
         {
-            return inputFilesPath != null;
+            return descriptor.inputFiles != null;
         }
 
         private boolean hasOutputFiles()
         {
-            return outputFilesPath != null;
+            return descriptor.outputFiles != null;
         }
     }
 
     public static class FileExtension
     {
         String extension;
+        final String defaultExtension;
         String description;
-        BiConsumer<TestInfo, Path> extensionProcessor;
+        // content is parsed into test descriptor, otherwise file is only referenced
+        final boolean config;
+        final int id;
 
         private static final Map<String, FileExtension> fileExtensionsByExt = new HashMap<>();
         private static final List<FileExtension> fileExtensionsById = new ArrayList<>();
 
-        public static FileExtension STDIN = new FileExtension("in", "stdin", TestInfo::attachInput);
-        public static FileExtension STDOUT = new FileExtension("out", "stdout", TestInfo::attachOutput);
-        public static FileExtension STDERR = new FileExtension("err", "stderr", TestInfo::attachError);
-        public static FileExtension ARGS = new FileExtension("args", "arguments", TestInfo::attachArguments);
-        public static FileExtension EXIT_CODE = new FileExtension("exit", "exit code", TestInfo::attachExitCode);
-        public static FileExtension INPUT_GEN = new FileExtension("genin", "stdin generator", TestInfo::attachGenerate);
-        public static FileExtension OUTPUT_GEN = new FileExtension("gen", "reference solver", TestInfo::attachRefSolution);
-        public static FileExtension TIMEOUT = new FileExtension("timeout", "timeout", TestInfo::attachTimeout);
-        public static FileExtension RUN_DIRECTORY = new FileExtension("rundir", "run directory", TestInfo::attachRunDir);
-        public static FileExtension IN_FILES = new FileExtension("infiles", "input files", TestInfo::attachInputFiles);
-        public static FileExtension OUT_FILES = new FileExtension("outfiles", "output files", TestInfo::attachOutputFiles);
-        public static FileExtension ENVIRONMENT_MAP = new FileExtension("envmap", "environment", TestInfo::attachEnvironmentMap);
-        public static FileExtension DESCRIPTION = new FileExtension("desc", "description", TestInfo::attachDescription);
-
-        public FileExtension(final String extension, final String description, final BiConsumer<TestInfo, Path> extensionProcessor)
+        public static FileExtension STDIN = new FileExtension("in", "stdin", false);
+        public static FileExtension STDOUT = new FileExtension("out", "stdout", false);
+        public static FileExtension STDERR = new FileExtension("err", "stderr", false);
+        public static FileExtension ARGS = new FileExtension("args", "arguments", true);
+        public static FileExtension EXIT_CODE = new FileExtension("exit", "exit code", true);
+        public static FileExtension INPUT_GEN = new FileExtension("genin", "stdin generator", true);
+        public static FileExtension OUTPUT_GEN = new FileExtension("gen", "reference solver", true);
+        public static FileExtension TIMEOUT = new FileExtension("timeout", "timeout", true);
+        public static FileExtension RUN_DIRECTORY = new FileExtension("rundir", "run directory", true);
+        public static FileExtension IN_FILES = new FileExtension("infiles", "input files", true);
+        public static FileExtension OUT_FILES = new FileExtension("outfiles", "output files", true);
+        public static FileExtension ENVIRONMENT_MAP = new FileExtension("envmap", "environment", true);
+        public static FileExtension DESCRIPTION = new FileExtension("desc", "description", true);
+        public static FileExtension MEMORY_LIMIT = new FileExtension("memlimit", "memory limit", true);
+        public static FileExtension CPU_TIME = new FileExtension("cputime", "cpu time limit", true);
+        public static FileExtension CHECKER = new FileExtension("checker", "checker", true);
+        public static FileExtension OUTPUT_LIMIT = new FileExtension("outlimit", "output limit", true);
+
+        public FileExtension(final String extension, final String description, final boolean config)
         {
             this.extension = extension;
+            this.defaultExtension = extension;
             this.description = description;
-            this.extensionProcessor = extensionProcessor;
+            this.config = config;
+            this.id = fileExtensionsById.size();
 
             fileExtensionsByExt.put(extension, this);
             fileExtensionsById.add(this);
@@ -894,22 +7919,47 @@ public class TestRunner
 
         public static boolean changeExtensions(final String[] extensions)
         {
-            if (extensions.length != fileExtensionsById.size())
+            if (extensions.length > fileExtensionsById.size())
             {
-                System.err.printf("expected %d parts (%s) for -Dtr.file_exts but got list with length: %d%n",
+                System.err.printf("expected at most %d parts (%s) for -Dtr.file_exts but got list with length: %d%n",
                     fileExtensionsById.size(),
                     fileExtensionsById.stream().map(ext -> ext.description).collect(Collectors.joining("/")),
                     extensions.length);
                 return true;
             }
 
-            for (int i = 0; i < extensions.length; i++)
+            final List<String> complete = complete(extensions);
+            if (new HashSet<>(complete).size() != complete.size())
+            {
+                System.err.println("duplicate extension in -Dtr.file_exts (missing trailing parts are defaults): " + String.join(",", complete));
+                return true;
+            }
+
+            fileExtensionsByExt.clear();
+            for (int i = 0; i < complete.size(); i++)
             {
-                fileExtensionsById.get(i).extension = extensions[i];
+                fileExtensionsById.get(i).extension = complete.get(i);
+                fileExtensionsByExt.put(complete.get(i), fileExtensionsById.get(i));
             }
             return false;
         }
 
+        // lists written before later extensions were added are shorter, missing trailing parts keep their defaults
+        private static List<String> complete(final String[] extensions)
+        {
+            final List<String> complete = new ArrayList<>(Arrays.asList(extensions));
+            for (int i = extensions.length; i < fileExtensionsById.size(); i++)
+            {
+                complete.add(fileExtensionsById.get(i).defaultExtension);
+            }
+            return complete;
+        }
+
+        private int bit()
+        {
+            return 1 << id;
+        }
+
         public static FileExtension get(final String extension)
         {
             return fileExtensionsByExt.get(extension);
@@ -0,0 +1,78 @@
+package testrunner.jmh;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DiscoveryBenchmark
+{
+    private static final String[] EXTENSIONS = {"in", "out", "args", "exit", "desc"};
+
+    @Param({"100000"})
+    int files;
+
+    @Param({"false", "true"})
+    boolean manifest;
+
+    Path testFolder;
+    Path manifestFile;
+
+    @Setup
+    public void setup() throws Throwable
+    {
+        testFolder = Files.createTempDirectory("tr-jmh-discovery");
+        for (int i = 0; i < files; i++)
+        {
+            Files.writeString(testFolder.resolve(String.format("test%06d.%s", i / EXTENSIONS.length, EXTENSIONS[i % EXTENSIONS.length])),
+                "0\n");
+        }
+
+        if (manifest)
+        {
+            // files modified shortly before manifest is saved are not trusted and would be read again
+            Thread.sleep(3100);
+            manifestFile = testFolder.resolveSibling(testFolder.getFileName() + ".trmanifest");
+            final Object loaded = Internals.MANIFEST_LOAD.invoke(manifestFile);
+            Internals.SET_MANIFEST.invoke(loaded);
+            Internals.DISCOVER_TESTS.invoke(testFolder);
+            Internals.MANIFEST_SAVE.invoke(loaded);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Throwable
+    {
+        Internals.SET_MANIFEST.invoke(null);
+        Internals.deleteRecursively(testFolder);
+        Internals.deleteRecursively(manifestFile);
+    }
+
+    @Benchmark
+    public Map<?, ?> discoverTests() throws Throwable
+    {
+        if (manifest)
+        {
+            Internals.SET_MANIFEST.invoke(Internals.MANIFEST_LOAD.invoke(manifestFile));
+        }
+        return (Map<?, ?>) Internals.DISCOVER_TESTS.invoke(testFolder);
+    }
+}
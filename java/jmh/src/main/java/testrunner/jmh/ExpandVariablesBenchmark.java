@@ -0,0 +1,74 @@
+package testrunner.jmh;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ExpandVariablesBenchmark
+{
+    @Param({"plain", "folders", "files", "variables"})
+    String template;
+
+    Path testFolder;
+    Object test;
+    String argument;
+    Object compiled;
+
+    @Setup
+    public void setup() throws Throwable
+    {
+        testFolder = Files.createTempDirectory("tr-jmh-expand");
+        Files.writeString(testFolder.resolve("t.infiles"), "a.txt\nb.txt\nc.txt\n");
+        Files.writeString(testFolder.resolve("t.outfiles"), "x.txt\ny.txt\n");
+
+        final Map<?, ?> tests = (Map<?, ?>) Internals.DISCOVER_TESTS.invoke(testFolder);
+        test = Internals.TEST_INFO_NEW.invoke(tests.get("t"));
+        Internals.TEST_INFO_PREPARE.invoke(test, testFolder, Internals.NULL_OUT);
+
+        argument = switch (template)
+        {
+            case "plain" -> "--some-plain-argument-without-variables";
+            case "folders" -> "--in=$$TEST_FOLDER$$/data --cwd=$$RUN_DIRECTORY$$";
+            case "files" -> "--first=$$INPUT_FILES_0$$ --all=$$INPUT_FILES_,$$ --out=$$OUTPUT_FILES_1$$";
+            default -> "--name=$$TEST_NAME$$ --worker=$$WORKER_ID$$ --seed=$$SEED$$";
+        };
+        compiled = Internals.TEMPLATE_COMPILE.invoke(argument);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception
+    {
+        Internals.deleteRecursively(testFolder);
+    }
+
+    @Benchmark
+    public Object compile() throws Throwable
+    {
+        return Internals.TEMPLATE_COMPILE.invoke(argument);
+    }
+
+    @Benchmark
+    public String render() throws Throwable
+    {
+        return (String) Internals.TEMPLATE_RENDER.invoke(compiled, test, testFolder);
+    }
+}
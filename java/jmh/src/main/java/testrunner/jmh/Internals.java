@@ -0,0 +1,135 @@
+package testrunner.jmh;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+
+// Access to private parts of TestRunner, which lives in default package and keeps everything private.
+final class Internals
+{
+    static final Class<?> TEST_RUNNER = load("TestRunner");
+    static final Class<?> TEST_INFO = load("TestRunner$TestInfo");
+    static final Class<?> TEST_DESCRIPTOR = load("TestRunner$TestDescriptor");
+    static final Class<?> MANIFEST = load("TestRunner$Manifest");
+    static final Class<?> CHECKER = load("TestRunner$Checker");
+    static final Class<?> BYTE_READER = load("TestRunner$ByteReader");
+    static final Class<?> WORKSPACE = load("TestRunner$Workspace");
+    static final Class<?> SESSION = load("TestRunner$Session");
+    static final Class<?> TEMPLATE = load("TestRunner$Template");
+
+    static final MethodHandle ESCAPE_INVISIBLES = findStatic(TEST_RUNNER, "escapeInvisibles", String.class, String.class);
+    static final MethodHandle CHECK_OUTPUT_FILES =
+        findStatic(TEST_RUNNER, "checkOutputFiles", boolean.class, TEST_INFO, Path.class, PrintStream.class);
+    static final MethodHandle DISCOVER_TESTS = findStatic(TEST_RUNNER, "discoverTests", Map.class, Path.class);
+    static final MethodHandle RUN_TEST =
+        findStatic(TEST_RUNNER, "runTest", load("TestRunner$TestResult"), SESSION, TEST_DESCRIPTOR, PrintStream.class);
+    static final MethodHandle WORKSPACE_NEW = findConstructor(WORKSPACE, Path.class, Path.class);
+    static final MethodHandle SESSION_NEW = findConstructor(SESSION, WORKSPACE, String[].class, PrintStream.class, List.class, Path.class);
+
+    static final MethodHandle SET_MANIFEST = findStaticSetter(TEST_RUNNER, "manifest", MANIFEST);
+    static final MethodHandle MANIFEST_LOAD = findStatic(MANIFEST, "load", MANIFEST, Path.class);
+    static final MethodHandle MANIFEST_SAVE = findVirtual(MANIFEST, "save", void.class);
+
+    static final MethodHandle TEST_DESCRIPTOR_OF_NAME = findStatic(TEST_DESCRIPTOR, "ofName", TEST_DESCRIPTOR, String.class);
+    static final MethodHandle TEST_INFO_NEW = findConstructor(TEST_INFO, TEST_DESCRIPTOR);
+    static final MethodHandle TEST_INFO_PREPARE = findVirtual(TEST_INFO, "prepare", boolean.class, Path.class, PrintStream.class);
+
+    static final MethodHandle TEMPLATE_COMPILE = findStatic(TEMPLATE, "compile", TEMPLATE, String.class);
+    static final MethodHandle TEMPLATE_RENDER = findVirtual(TEMPLATE, "render", String.class, TEST_INFO, Path.class);
+
+    static final MethodHandle CHECKER_PARSE = findStatic(CHECKER, "parse", CHECKER, String.class);
+    static final MethodHandle CHECKER_CHECK = findVirtual(CHECKER, "check", load("TestRunner$Mismatch"), BYTE_READER, BYTE_READER);
+    static final MethodHandle BYTE_READER_NEW = findConstructor(BYTE_READER, InputStream.class);
+
+    static final PrintStream NULL_OUT = new PrintStream(OutputStream.nullOutputStream());
+
+    private Internals()
+    {}
+
+    static void deleteRecursively(final Path path) throws IOException
+    {
+        if (path != null && Files.exists(path))
+        {
+            try (var paths = Files.walk(path))
+            {
+                for (final Path p : paths.sorted(Comparator.reverseOrder()).toList())
+                {
+                    Files.delete(p);
+                }
+            }
+        }
+    }
+
+    private static Class<?> load(final String name)
+    {
+        try
+        {
+            return Class.forName(name);
+        }
+        catch (final ClassNotFoundException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static MethodHandle findStatic(final Class<?> owner, final String name, final Class<?> returnType, final Class<?>... params)
+    {
+        try
+        {
+            return MethodHandles.privateLookupIn(owner, MethodHandles.lookup())
+                .findStatic(owner, name, MethodType.methodType(returnType, params));
+        }
+        catch (final ReflectiveOperationException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static MethodHandle findStaticSetter(final Class<?> owner, final String name, final Class<?> type)
+    {
+        try
+        {
+            return MethodHandles.privateLookupIn(owner, MethodHandles.lookup()).findStaticSetter(owner, name, type);
+        }
+        catch (final ReflectiveOperationException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static MethodHandle findConstructor(final Class<?> owner, final Class<?>... params)
+    {
+        try
+        {
+            return MethodHandles.privateLookupIn(owner, MethodHandles.lookup())
+                .findConstructor(owner, MethodType.methodType(void.class, params));
+        }
+        catch (final ReflectiveOperationException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static MethodHandle findVirtual(final Class<?> owner, final String name, final Class<?> returnType, final Class<?>... params)
+    {
+        try
+        {
+            return MethodHandles.privateLookupIn(owner, MethodHandles.lookup())
+                .findVirtual(owner, name, MethodType.methodType(returnType, params));
+        }
+        catch (final ReflectiveOperationException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+}
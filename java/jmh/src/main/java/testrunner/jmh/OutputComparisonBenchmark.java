@@ -0,0 +1,86 @@
+package testrunner.jmh;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OutputComparisonBenchmark
+{
+    @State(Scope.Benchmark)
+    public static class Numbers
+    {
+        @Param({"100000"})
+        int count;
+
+        @Param({"exact", "trailing", "tokens", "numeric 1e-6"})
+        String checkerSpec;
+
+        Object checker;
+        byte[] result;
+        byte[] expected;
+
+        @Setup
+        public void setup() throws Throwable
+        {
+            checker = Internals.CHECKER_PARSE.invoke(checkerSpec);
+            final StringBuilder resultText = new StringBuilder();
+            final StringBuilder expectedText = new StringBuilder();
+            for (int i = 0; i < count; i++)
+            {
+                resultText.append(i * 0.001).append(i % 10 == 9 ? '\n' : ' ');
+                expectedText.append(i * 0.001).append(i % 10 == 9 ? '\n' : ' ');
+            }
+            result = resultText.toString().getBytes();
+            expected = expectedText.toString().getBytes();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Text
+    {
+        @Param({"1000"})
+        int length;
+
+        String escapable;
+
+        @Setup
+        public void setup()
+        {
+            final StringBuilder sb = new StringBuilder(length);
+            for (int i = 0; i < length; i++)
+            {
+                sb.append((char) (i % 10 == 0 ? i % 32 : 'a' + i % 26));
+            }
+            escapable = sb.toString();
+        }
+    }
+
+    @Benchmark
+    public Object check(final Numbers numbers) throws Throwable
+    {
+        return Internals.CHECKER_CHECK.invoke(numbers.checker,
+            Internals.BYTE_READER_NEW.invoke(new ByteArrayInputStream(numbers.result)),
+            Internals.BYTE_READER_NEW.invoke(new ByteArrayInputStream(numbers.expected)));
+    }
+
+    @Benchmark
+    public String escapeInvisibles(final Text text) throws Throwable
+    {
+        return (String) Internals.ESCAPE_INVISIBLES.invoke(text.escapable);
+    }
+}
@@ -0,0 +1,73 @@
+package testrunner.jmh;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OutputFilesBenchmark
+{
+    @Param({"1048576", "268435456"})
+    int size;
+
+    @Param({"identical", "lastByte"})
+    String mismatch;
+
+    Path testFolder;
+    Path runDir;
+    Object test;
+
+    @Setup
+    public void setup() throws Throwable
+    {
+        testFolder = Files.createTempDirectory("tr-jmh-outfiles");
+        runDir = Files.createTempDirectory("tr-jmh-outfiles-run");
+        Files.writeString(testFolder.resolve("t.outfiles"), "result.bin\n");
+        Files.writeString(testFolder.resolve("t.rundir"), runDir.toString());
+
+        final byte[] content = new byte[size];
+        new Random(42).nextBytes(content);
+        Files.write(testFolder.resolve("result.bin"), content);
+        if ("lastByte".equals(mismatch))
+        {
+            content[size - 1]++;
+        }
+        Files.write(runDir.resolve("result.bin"), content);
+
+        final Map<?, ?> tests = (Map<?, ?>) Internals.DISCOVER_TESTS.invoke(testFolder);
+        test = Internals.TEST_INFO_NEW.invoke(tests.get("t"));
+        Internals.TEST_INFO_PREPARE.invoke(test, testFolder, Internals.NULL_OUT);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception
+    {
+        Internals.deleteRecursively(testFolder);
+        Internals.deleteRecursively(runDir);
+    }
+
+    @Benchmark
+    public boolean checkOutputFiles() throws Throwable
+    {
+        return (boolean) Internals.CHECK_OUTPUT_FILES.invoke(test, testFolder, Internals.NULL_OUT);
+    }
+}
@@ -0,0 +1,60 @@
+package testrunner.jmh;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+// Cost of whole test case with trivial main, compared to bare process spawn.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TestOverheadBenchmark
+{
+    private static final String[] MAIN_BASE = {"/bin/true"};
+
+    Path testFolder;
+    Object session;
+
+    @Setup
+    public void setup() throws Throwable
+    {
+        testFolder = Files.createTempDirectory("tr-jmh-overhead");
+        final Object workspace = Internals.WORKSPACE_NEW.invoke(testFolder, (Path) null);
+        session = Internals.SESSION_NEW.invoke(workspace, MAIN_BASE, Internals.NULL_OUT, List.of(), null);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception
+    {
+        Internals.deleteRecursively(testFolder);
+    }
+
+    @Benchmark
+    public int bareProcess() throws Exception
+    {
+        return new ProcessBuilder(MAIN_BASE).start().waitFor();
+    }
+
+    @Benchmark
+    public Object runTest() throws Throwable
+    {
+        final Object test = Internals.TEST_DESCRIPTOR_OF_NAME.invoke("t");
+        return Internals.RUN_TEST.invoke(session, test, Internals.NULL_OUT);
+    }
+}
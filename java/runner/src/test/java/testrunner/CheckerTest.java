@@ -0,0 +1,199 @@
+package testrunner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+
+
+class CheckerTest
+{
+    @Test
+    void parseBuiltInCheckers() throws Throwable
+    {
+        assertSame(parse("exact"), parse(" exact\n"));
+        assertNotNull(parse("trailing"));
+        assertNotNull(parse("tokens"));
+        assertSame(Internals.NUMERIC_CHECKER, parse("numeric").getClass());
+        assertSame(Internals.NUMERIC_CHECKER, parse("numeric 1e-3 0.5").getClass());
+    }
+
+    @Test
+    void parseExternalCheckers() throws Throwable
+    {
+        assertNull(parse("./checker.sh"));
+        assertNull(parse("exact 1"));
+        assertNull(parse("tokens $$INPUT_FILES_0$$"));
+        assertNull(parse("numeric 1 2 3"));
+    }
+
+    @Test
+    void parseInvalidEpsilon()
+    {
+        assertThrows(NumberFormatException.class, () -> parse("numeric -1"));
+        assertThrows(NumberFormatException.class, () -> parse("numeric 1 x"));
+        assertThrows(NumberFormatException.class, () -> parse("numeric NaN"));
+    }
+
+    @Test
+    void exact() throws Throwable
+    {
+        assertNull(check("exact", "1 2\n3\n", "1 2\n3\n"));
+        assertNull(check("exact", "", ""));
+        assertMismatch(check("exact", "a\nbc\n", "a\nbd\n"), 3, 2, 2);
+        assertMismatch(check("exact", "1 2 \n", "1 2\n"), 3, 1, 4);
+    }
+
+    @Test
+    void exactMissingFinalNewline() throws Throwable
+    {
+        final Object mismatch = check("exact", "1\n2", "1\n2\n");
+        assertMismatch(mismatch, 3, 2, 2);
+        assertTrue(message(mismatch).endsWith("found end of output"), message(mismatch));
+    }
+
+    @Test
+    void trailingIgnoresBlanksAtLineEnd() throws Throwable
+    {
+        assertNull(check("trailing", "1 2  \r\n3\t\n", "1 2\n3\n"));
+        assertNull(check("trailing", "1 2\n3\n", "1 2 \t\n3  \n"));
+    }
+
+    @Test
+    void trailingIgnoresBlankLinesAtEnd() throws Throwable
+    {
+        assertNull(check("trailing", "1\n2", "1\n2\n"));
+        assertNull(check("trailing", "1\n2\n\n \n", "1\n2\n"));
+        assertNull(check("trailing", "\n\n", ""));
+    }
+
+    @Test
+    void trailingMismatch() throws Throwable
+    {
+        assertMismatch(check("trailing", "1 2\n3\n", "1 2\n4\n"), 4, 2, 1);
+        assertMismatch(check("trailing", "1 2 3\n", "1 2\n"), 3, 1, 4);
+        assertMismatch(check("trailing", " 1\n", "1\n"), 0, 1, 1);
+        assertNotNull(check("trailing", "1\n\n2\n", "1\n2\n"));
+        assertNotNull(check("trailing", "1\n", "1\n2\n"));
+    }
+
+    @Test
+    void tokensIgnoreWhitespace() throws Throwable
+    {
+        assertNull(check("tokens", "1   2\n3", "1 2 3\n"));
+        assertNull(check("tokens", "\n\t1\r\n2 \n\n", "1 2"));
+        assertNull(check("tokens", " \n", ""));
+    }
+
+    @Test
+    void tokensMismatch() throws Throwable
+    {
+        assertMismatch(check("tokens", "x  yy\n", "x yz\n"), 3, 1, 4);
+        assertMismatch(check("tokens", "1\n2\n", "1\n3\n"), 2, 2, 1);
+        assertTrue(message(check("tokens", "1 2", "1 2 3")).endsWith("found end of output"));
+        assertTrue(message(check("tokens", "1 2 3", "1 2")).startsWith("expected end of output"));
+        assertNotNull(check("tokens", "12", "1 2"));
+    }
+
+    @Test
+    void tokensLongerThanDump() throws Throwable
+    {
+        final String prefix = "a".repeat(100);
+        assertNull(check("tokens", prefix + " b", prefix + "\nb\n"));
+        final Object mismatch = check("tokens", "x " + prefix + "b", "x " + prefix + "c");
+        assertMismatch(mismatch, 2, 1, 3);
+        assertTrue(message(mismatch).contains("...\""), message(mismatch));
+        assertNotNull(check("tokens", prefix, prefix + "a"));
+    }
+
+    @Test
+    void numericWithinEpsilon() throws Throwable
+    {
+        assertNull(check("numeric", "1.0000001 2\n", "1 2.0000000\n"));
+        assertNull(check("numeric", "1.0 \n", "1\n"));
+        assertNull(check("numeric", "-0.5e1", "-5"));
+        assertNull(check("numeric 0.01", "1.001", "1"));
+        assertNull(check("numeric 0 1e-3", "1000.5", "1000"));
+        assertNull(check("numeric", "abc 1", "abc 1.0000000001"));
+    }
+
+    @Test
+    void numericMismatch() throws Throwable
+    {
+        assertMismatch(check("numeric", "1 1.001\n", "1 1\n"), 2, 1, 3);
+        assertNotNull(check("numeric 0 1e-3", "1002", "1000"));
+        assertNotNull(check("numeric", "1", "x"));
+        assertNotNull(check("numeric", "1x", "1"));
+        assertNotNull(check("numeric", "1 2", "1"));
+    }
+
+    @Test
+    void numericLongTokens() throws Throwable
+    {
+        // longer than mismatch message prefix, still parsed
+        assertNull(check("numeric", "0." + "0".repeat(100) + "1", "0"));
+        assertNull(check("numeric 0 1e-9", "1" + "0".repeat(80), "1" + "0".repeat(79) + "1"));
+        assertNull(check("numeric", "3.14159265358979323846264338327950288419716939937510582097494459230781640628620899", "3.1415926"));
+        assertNotNull(check("numeric", "1" + "0".repeat(80), "2" + "0".repeat(80)));
+    }
+
+    @Test
+    void numericNanAndInfinity() throws Throwable
+    {
+        // not numbers, so they must be equal as tokens
+        assertNull(check("numeric", "nan inf -inf", "nan inf -inf"));
+        assertNotNull(check("numeric", "nan", "NaN"));
+        assertNotNull(check("numeric", "nan", "0"));
+        assertNotNull(check("numeric", "inf", "1e400"));
+    }
+
+    @Test
+    void numericParse() throws Throwable
+    {
+        assertEquals(1000, parseNumber("1e3"));
+        assertEquals(-0.25, parseNumber("-2.5E-1"));
+        assertEquals(0.5, parseNumber("+.5"));
+        assertEquals(5, parseNumber("5."));
+        assertEquals(1e80, parseNumber("1" + "0".repeat(80)), 1e65);
+        assertEquals(1e-101, parseNumber("0." + "0".repeat(100) + "1"), 1e-115);
+        for (final String notNumber : new String[] {"", "-", ".", "1e", "1e+", "1.2.3", "0x10", "nan", "inf", "Infinity"})
+        {
+            assertTrue(Double.isNaN(parseNumber(notNumber)), notNumber);
+        }
+    }
+
+    private static Object parse(final String spec) throws Throwable
+    {
+        return Internals.CHECKER_PARSE.invoke(spec);
+    }
+
+    private static Object check(final String spec, final String result, final String expected) throws Throwable
+    {
+        return Internals.CHECKER_CHECK.invoke(parse(spec), Internals.byteReader(result), Internals.byteReader(expected));
+    }
+
+    private static double parseNumber(final String token) throws Throwable
+    {
+        final byte[] bytes = token.getBytes(StandardCharsets.US_ASCII);
+        return (double) Internals.NUMERIC_PARSE.invoke(bytes, bytes.length);
+    }
+
+    private static String message(final Object mismatch) throws Throwable
+    {
+        assertNotNull(mismatch);
+        return (String) Internals.MISMATCH_MESSAGE.invoke(mismatch);
+    }
+
+    private static void assertMismatch(final Object mismatch, final long offset, final long line, final long column) throws Throwable
+    {
+        assertNotNull(mismatch);
+        assertEquals(offset, (long) Internals.MISMATCH_OFFSET.invoke(mismatch), "offset");
+        assertEquals(line, (long) Internals.MISMATCH_LINE.invoke(mismatch), "line");
+        assertEquals(column, (long) Internals.MISMATCH_COLUMN.invoke(mismatch), "column");
+    }
+}
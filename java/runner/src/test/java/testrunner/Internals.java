@@ -0,0 +1,108 @@
+package testrunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.charset.StandardCharsets;
+
+
+// Access to private parts of TestRunner, which lives in default package and keeps everything private.
+final class Internals
+{
+    static final Class<?> CHECKER = load("TestRunner$Checker");
+    static final Class<?> NUMERIC_CHECKER = load("TestRunner$NumericChecker");
+    static final Class<?> BYTE_READER = load("TestRunner$ByteReader");
+    static final Class<?> MISMATCH = load("TestRunner$Mismatch");
+    static final Class<?> LINE_DIFF = load("TestRunner$LineDiff");
+    static final Class<?> LINES = load("TestRunner$LineDiff$Lines");
+
+    static final MethodHandle CHECKER_PARSE = findStatic(CHECKER, "parse", CHECKER, String.class);
+    static final MethodHandle CHECKER_CHECK = findVirtual(CHECKER, "check", MISMATCH, BYTE_READER, BYTE_READER);
+    static final MethodHandle NUMERIC_PARSE = findStatic(NUMERIC_CHECKER, "parse", double.class, byte[].class, int.class);
+    static final MethodHandle BYTE_READER_NEW = findConstructor(BYTE_READER, InputStream.class);
+
+    static final MethodHandle MISMATCH_OFFSET = findGetter(MISMATCH, "offset", long.class);
+    static final MethodHandle MISMATCH_LINE = findGetter(MISMATCH, "line", long.class);
+    static final MethodHandle MISMATCH_COLUMN = findGetter(MISMATCH, "column", long.class);
+    static final MethodHandle MISMATCH_MESSAGE = findGetter(MISMATCH, "message", String.class);
+
+    static final MethodHandle LINE_DIFF_REPORT = findStatic(LINE_DIFF, "report", void.class, PrintStream.class, String.class,
+        long.class, long.class, long.class, long.class, byte[].class, boolean.class, byte[].class, boolean.class);
+    static final MethodHandle LINE_DIFF_NEW = findConstructor(LINE_DIFF, LINES, LINES);
+    static final MethodHandle LINE_DIFF_DIFF = findVirtual(LINE_DIFF, "diff", byte[].class);
+    static final MethodHandle LINES_SPLIT = findStatic(LINES, "split", LINES, byte[].class, boolean.class);
+
+    private Internals()
+    {}
+
+    static Object byteReader(final String content) throws Throwable
+    {
+        return BYTE_READER_NEW.invoke(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static Class<?> load(final String name)
+    {
+        try
+        {
+            return Class.forName(name);
+        }
+        catch (final ClassNotFoundException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static MethodHandle findStatic(final Class<?> owner, final String name, final Class<?> returnType, final Class<?>... params)
+    {
+        try
+        {
+            return MethodHandles.privateLookupIn(owner, MethodHandles.lookup())
+                .findStatic(owner, name, MethodType.methodType(returnType, params));
+        }
+        catch (final ReflectiveOperationException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static MethodHandle findConstructor(final Class<?> owner, final Class<?>... params)
+    {
+        try
+        {
+            return MethodHandles.privateLookupIn(owner, MethodHandles.lookup())
+                .findConstructor(owner, MethodType.methodType(void.class, params));
+        }
+        catch (final ReflectiveOperationException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static MethodHandle findVirtual(final Class<?> owner, final String name, final Class<?> returnType, final Class<?>... params)
+    {
+        try
+        {
+            return MethodHandles.privateLookupIn(owner, MethodHandles.lookup())
+                .findVirtual(owner, name, MethodType.methodType(returnType, params));
+        }
+        catch (final ReflectiveOperationException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static MethodHandle findGetter(final Class<?> owner, final String name, final Class<?> type)
+    {
+        try
+        {
+            return MethodHandles.privateLookupIn(owner, MethodHandles.lookup()).findGetter(owner, name, type);
+        }
+        catch (final ReflectiveOperationException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+}
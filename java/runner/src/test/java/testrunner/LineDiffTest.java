@@ -0,0 +1,101 @@
+package testrunner;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+
+class LineDiffTest
+{
+    @Test
+    void identical() throws Throwable
+    {
+        final byte[] content = bytes("a\nb\nc\n");
+        final Object lines = Internals.LINES_SPLIT.invoke(content, true);
+        final byte[] script = (byte[]) Internals.LINE_DIFF_DIFF.invoke(Internals.LINE_DIFF_NEW.invoke(lines, lines));
+        assertArrayEquals(new byte[3], script);
+        assertEquals(List.of(), hunks(report("a\nb\nc\n", true, "a\nb\nc\n", true)));
+    }
+
+    @Test
+    void insertOnly() throws Throwable
+    {
+        assertEquals(List.of("@@ -1,3 +1,4 @@ byte 0", " a", " b", "+X", " c"), hunks(report("a\nb\nc\n", true, "a\nb\nX\nc\n", true)));
+    }
+
+    @Test
+    void deleteOnly() throws Throwable
+    {
+        assertEquals(List.of("@@ -1,3 +1,2 @@ byte 0", " a", "-b", " c"), hunks(report("a\nb\nc\n", true, "a\nc\n", true)));
+    }
+
+    @Test
+    void changeWithUnterminatedLastLine() throws Throwable
+    {
+        assertEquals(List.of("@@ -1,2 +1,2 @@ byte 0", " a", "-b", "+b <no newline>"), hunks(report("a\nb\n", true, "a\nb", true)));
+    }
+
+    @Test
+    void hunkAtWindowEdge() throws Throwable
+    {
+        // partial last line of truncated result window is dropped, so change reaching it may continue past window
+        assertEquals(List.of("@@ -1,2 +1,2 @@ byte 0", " a", "-b", "+X", "... line diff window ends at line 3 of result"),
+            hunks(report("a\nb\n", true, "a\nX\nY", false)));
+    }
+
+    @Test
+    void hunkAtWindowEdgeAfterReliableHunk() throws Throwable
+    {
+        final String expected = "1\n2\n3\n4\n5\n6\n7\n8\n9\n";
+        final String result = "1\nX\n3\n4\n5\n6\n7\n8\nY\n";
+        assertEquals(List.of("@@ -1,4 +1,4 @@ byte 0", " 1", "-2", "+X", " 3", " 4", "... line diff window ends at line 9 of result"),
+            hunks(report(expected, true, result, false)));
+    }
+
+    @Test
+    void halvesWindowWhenTraceDoesNotFit() throws Throwable
+    {
+        // every line differs, 8192 edits do not fit into trace until both windows are down to 512 lines
+        final StringBuilder expected = new StringBuilder();
+        final StringBuilder result = new StringBuilder();
+        for (int i = 0; i < 4096; i++)
+        {
+            expected.append('e').append(i).append('\n');
+            result.append('r').append(i).append('\n');
+        }
+        final List<String> hunks = hunks(report(expected.toString(), true, result.toString(), true));
+        assertEquals("@@ -1,512 +1,512 @@ byte 0", hunks.get(0));
+        assertEquals("-e0", hunks.get(1));
+        assertTrue(hunks.contains("... 984 more lines of hunk"), hunks.toString());
+        assertEquals("... line diff window ends at line 513 of result", hunks.get(hunks.size() - 1));
+    }
+
+    private static byte[] bytes(final String content)
+    {
+        return content.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String report(final String expected, final boolean expectedComplete, final String result, final boolean resultComplete)
+        throws Throwable
+    {
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        final PrintStream out = new PrintStream(buffer, true, StandardCharsets.UTF_8);
+        Internals.LINE_DIFF_REPORT.invoke(out, "stdout", 0L, 0L, 1L, 1L, bytes(expected), expectedComplete, bytes(result), resultComplete);
+        return buffer.toString(StandardCharsets.UTF_8);
+    }
+
+    // printed lines without mismatch header and final empty line
+    private static List<String> hunks(final String report)
+    {
+        final List<String> lines = report.lines().toList();
+        assertTrue(lines.get(0).startsWith("Mismatch at 0 (line 1, column 1) of result stdout"), lines.get(0));
+        assertEquals("", lines.get(lines.size() - 1));
+        return lines.subList(1, lines.size() - 1);
+    }
+}